@@ -24,6 +24,10 @@ import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.stage.Stage;
 
+import org.jackhuang.hmcl.game.VersionCache;
+import org.jackhuang.hmcl.launch.ClassDataSharing;
+import org.jackhuang.hmcl.launch.CrashRules;
+import org.jackhuang.hmcl.launch.NativesCache;
 import org.jackhuang.hmcl.task.Schedulers;
 import org.jackhuang.hmcl.ui.Controllers;
 import org.jackhuang.hmcl.upgrade.UpdateChecker;
@@ -73,6 +77,15 @@ public final class Launcher extends Application {
             // NetworkUtils.setUserAgentSupplier(() -> "Hello Minecraft! Launcher");
             Constants.UI_THREAD_SCHEDULER = Constants.JAVAFX_UI_THREAD_SCHEDULER;
 
+            CacheRepository.setInstance(new CacheRepository(CACHE_DIRECTORY.toPath()));
+            Schedulers.io().schedule(() -> CacheRepository.getInstance().gc());
+            HttpCache.setInstance(new HttpCache(new File(CACHE_DIRECTORY, "http").toPath()));
+            VerificationIndex.setInstance(new VerificationIndex(new File(CACHE_DIRECTORY, "verified.txt").toPath()));
+            VersionCache.setInstance(new VersionCache(new File(CACHE_DIRECTORY, "versions.bin").toPath(), Metadata.VERSION));
+            NativesCache.setInstance(new NativesCache(new File(CACHE_DIRECTORY, "natives").toPath()));
+            ClassDataSharing.setInstance(new ClassDataSharing(new File(CACHE_DIRECTORY, "cds").toPath()));
+            CrashRules.loadExtraRules(new File(HMCL_DIRECTORY, "crash-rules.json"));
+
             LOG.info("*** " + Metadata.TITLE + " ***");
             LOG.info("Operating System: " + System.getProperty("os.name") + ' ' + OperatingSystem.SYSTEM_VERSION);
             LOG.info("Java Version: " + System.getProperty("java.version") + ", " + System.getProperty("java.vendor"));
@@ -139,6 +152,7 @@ public final class Launcher extends Application {
     public static final File MINECRAFT_DIRECTORY = OperatingSystem.getWorkingDirectory("minecraft");
     public static final File HMCL_DIRECTORY = OperatingSystem.getWorkingDirectory("hmcl");
     public static final File LOG_DIRECTORY = new File(Launcher.HMCL_DIRECTORY, "logs");
+    public static final File CACHE_DIRECTORY = new File(Launcher.HMCL_DIRECTORY, "cache");
 
     public static final CrashReporter CRASH_REPORTER = new CrashReporter();
 }
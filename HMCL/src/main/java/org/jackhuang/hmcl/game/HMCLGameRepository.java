@@ -22,6 +22,7 @@ import com.google.gson.GsonBuilder;
 import org.jackhuang.hmcl.event.EventBus;
 import org.jackhuang.hmcl.event.RefreshedVersionsEvent;
 import org.jackhuang.hmcl.event.RefreshingVersionsEvent;
+import org.jackhuang.hmcl.event.VersionsChangedEvent;
 import org.jackhuang.hmcl.setting.EnumGameDirectory;
 import org.jackhuang.hmcl.setting.Profile;
 import org.jackhuang.hmcl.setting.Settings;
@@ -32,13 +33,14 @@ import org.jackhuang.hmcl.util.Logging;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import static org.jackhuang.hmcl.setting.ConfigHolder.config;
 
 public class HMCLGameRepository extends DefaultGameRepository {
     private final Profile profile;
-    private final Map<String, VersionSetting> versionSettings = new HashMap<>();
+    private final Map<String, VersionSetting> versionSettings = new ConcurrentHashMap<>();
     private final Set<String> beingModpackVersions = new HashSet<>();
 
     public boolean checkedModpack = false, checkingModpack = false;
@@ -92,9 +94,12 @@ public class HMCLGameRepository extends DefaultGameRepository {
 
     @Override
     protected void refreshVersionsImpl() {
-        versionSettings.clear();
-        super.refreshVersionsImpl();
-        versions.keySet().forEach(this::loadVersionSetting);
+        // Version settings are reloaded together with versions, which may be being reloaded by the watcher.
+        synchronized (refreshLock) {
+            versionSettings.clear();
+            super.refreshVersionsImpl();
+            versions.keySet().forEach(this::loadVersionSetting);
+        }
 
         try {
             File file = new File(getBaseDirectory(), "launcher_profiles.json");
@@ -105,6 +110,18 @@ public class HMCLGameRepository extends DefaultGameRepository {
         }
     }
 
+    @Override
+    protected VersionsChangedEvent refreshVersionsImpl(Collection<String> ids) {
+        synchronized (refreshLock) {
+            VersionsChangedEvent event = super.refreshVersionsImpl(ids);
+            if (event != null) {
+                event.getRemoved().forEach(versionSettings::remove);
+                event.getAdded().forEach(this::loadVersionSetting);
+            }
+            return event;
+        }
+    }
+
     @Override
     public void refreshVersions() {
         EventBus.EVENT_BUS.fireEvent(new RefreshingVersionsEvent(this));
@@ -48,7 +48,11 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import static org.jackhuang.hmcl.util.Lang.mapOf;
 import static org.jackhuang.hmcl.util.Pair.pair;
@@ -90,6 +94,12 @@ public final class LauncherHelper {
         VersionSetting setting = profile.getVersionSetting(selectedVersion);
         Optional<String> gameVersion = GameVersion.minecraftVersion(repository.getVersionJar(version));
 
+        // Logging in does not depend on game files, so it runs while game files are being checked.
+        // But the user will not be asked for the password until the game files are complete.
+        LaunchTimeline timeline = new LaunchTimeline();
+        FutureTask<AuthInfo> authentication = Schedulers.async(() -> timeline.record("login", () -> logIn(account)));
+        AtomicLong stageBegin = new AtomicLong(System.nanoTime());
+
         TaskExecutor executor = Task.of(Schedulers.javafx(), () -> emitStatus(LoadingState.DEPENDENCIES))
                 .then(variables -> {
                     if (setting.isNotCheckGame())
@@ -97,6 +107,7 @@ public final class LauncherHelper {
                     else
                         return dependencyManager.checkGameCompletionAsync(version);
                 })
+                .then(Task.of(() -> timeline.record("dependencies", stageBegin.getAndSet(System.nanoTime()))))
                 .then(Task.of(Schedulers.javafx(), () -> emitStatus(LoadingState.MODS)))
                 .then(var -> {
                     try {
@@ -109,20 +120,27 @@ public final class LauncherHelper {
                         return null;
                     }
                 })
+                .then(Task.of(() -> timeline.record("mods", stageBegin.getAndSet(System.nanoTime()))))
                 .then(Task.of(Schedulers.javafx(), () -> emitStatus(LoadingState.LOGGING_IN)))
                 .then(Task.of(i18n("account.methods"), variables -> {
+                    // Game files are complete now, prepare native libraries and assets while waiting for logging in.
+                    FutureTask<?> prepare = Schedulers.async(() -> {
+                        timeline.record("prepare", () -> prepare(repository, version));
+                        return null;
+                    });
+                    variables.set("prepare", prepare);
+                    AuthInfo authInfo;
                     try {
-                        variables.set("account", account.logIn());
-                    } catch (CredentialExpiredException e) {
-                        variables.set("account", DialogController.logIn(account));
-                    } catch (AuthenticationException e) {
-                        variables.set("account",
-                                account.playOffline().orElseThrow(() -> e));
+                        authInfo = authentication.get();
+                    } catch (ExecutionException e) {
+                        throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
                     }
+                    variables.set("account", authInfo != null ? authInfo : DialogController.logIn(account));
+                    timeline.record("waiting for login", stageBegin.getAndSet(System.nanoTime()));
                 }))
                 .then(Task.of(Schedulers.javafx(), () -> emitStatus(LoadingState.LAUNCHING)))
                 .then(Task.of(variables -> {
-                    variables.set("launcher", new HMCLGameLauncher(
+                    HMCLGameLauncher launcher = new HMCLGameLauncher(
                             repository,
                             selectedVersion,
                             variables.get("account"),
@@ -130,7 +148,15 @@ public final class LauncherHelper {
                             setting.getLauncherVisibility() == LauncherVisibility.CLOSE
                                     ? null // Unnecessary to start listening to game process output when close launcher immediately after game launched.
                                     : new HMCLProcessListener(variables.get("account"), setting, gameVersion.isPresent())
-                    ));
+                    );
+                    launcher.setTimeline(timeline);
+                    variables.set("launcher", launcher);
+
+                    // Failures of preparing will be reported by the launcher again.
+                    try {
+                        variables.<FutureTask<?>>get("prepare").get();
+                    } catch (ExecutionException ignored) {
+                    }
                 }))
                 .then(variables -> {
                     DefaultLauncher launcher = variables.get("launcher");
@@ -176,6 +202,8 @@ public final class LauncherHelper {
 
             @Override
             public void onStop(boolean success, TaskExecutor executor) {
+                if (!success)
+                    authentication.cancel(true);
                 if (!success && !Controllers.isStopped()) {
                     Platform.runLater(() -> {
                         // Check if the application has stopped
@@ -212,6 +240,29 @@ public final class LauncherHelper {
         executor.start();
     }
 
+    /**
+     * @return null if the user has to enter the password again.
+     */
+    private static AuthInfo logIn(Account account) throws Exception {
+        try {
+            return account.logIn();
+        } catch (CredentialExpiredException e) {
+            return null;
+        } catch (AuthenticationException e) {
+            return account.playOffline().orElseThrow(() -> e);
+        }
+    }
+
+    /**
+     * Extracts native libraries and reconstructs assets ahead of {@link DefaultLauncher#launch()},
+     * which finds them done then.
+     */
+    private static void prepare(GameRepository repository, Version version) throws IOException {
+        if (NativesCache.getInstance() != null)
+            NativesCache.getInstance().extract(repository, version);
+        repository.getActualAssetDirectory(version.getId(), version.getAssetIndex().getId());
+    }
+
     private static void checkGameState(Profile profile, VersionSetting setting, Version version, Runnable onAccept) throws InterruptedException {
         boolean flag = false;
 
@@ -453,6 +504,11 @@ public final class LauncherHelper {
 
         @Override
         public void onExit(int exitCode, ExitType exitType) {
+            onExit(exitCode, exitType, Collections.emptyList());
+        }
+
+        @Override
+        public void onExit(int exitCode, ExitType exitType, List<CrashRule> rules) {
             if (exitType == ExitType.INTERRUPTED)
                 return;
 
@@ -472,6 +528,8 @@ public final class LauncherHelper {
                     logWindow.show();
                     logWindow.onDone.register(() -> {
                         logWindow.logLine("Command: " + new CommandBuilder().addAll(process.getCommands()).toString(), Log4jLevel.INFO);
+                        if (!rules.isEmpty())
+                            logWindow.logLine("Crash rules fired: " + rules.stream().map(CrashRule::getId).collect(Collectors.joining(", ")), Log4jLevel.ERROR);
                         for (Map.Entry<String, Log4jLevel> entry : logs)
                             logWindow.logLine(entry.getKey(), entry.getValue());
                     });
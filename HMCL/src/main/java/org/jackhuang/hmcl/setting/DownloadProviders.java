@@ -17,6 +17,7 @@
  */
 package org.jackhuang.hmcl.setting;
 
+import org.jackhuang.hmcl.download.AdaptiveDownloadProvider;
 import org.jackhuang.hmcl.download.BMCLAPIDownloadProvider;
 import org.jackhuang.hmcl.download.CurseCDNDownloadProvider;
 import org.jackhuang.hmcl.download.DownloadProvider;
@@ -28,7 +29,11 @@ import java.util.List;
 public final class DownloadProviders {
     private DownloadProviders() {}
 
-    public static final List<DownloadProvider> DOWNLOAD_PROVIDERS = Lang.immutableListOf(new MojangDownloadProvider(), BMCLAPIDownloadProvider.INSTANCE, CurseCDNDownloadProvider.INSTANCE);
+    private static final MojangDownloadProvider MOJANG = new MojangDownloadProvider();
+
+    public static final AdaptiveDownloadProvider ADAPTIVE = new AdaptiveDownloadProvider(Lang.immutableListOf(MOJANG, BMCLAPIDownloadProvider.INSTANCE, CurseCDNDownloadProvider.INSTANCE));
+
+    public static final List<DownloadProvider> DOWNLOAD_PROVIDERS = Lang.immutableListOf(MOJANG, BMCLAPIDownloadProvider.INSTANCE, CurseCDNDownloadProvider.INSTANCE, ADAPTIVE);
 
     public static DownloadProvider getDownloadProvider(int index) {
         return Lang.get(DOWNLOAD_PROVIDERS, index).orElse(DOWNLOAD_PROVIDERS.get(0));
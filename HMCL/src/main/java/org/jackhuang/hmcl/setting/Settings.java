@@ -190,6 +190,11 @@ public class Settings {
 
     private void onProfileChanged() {
         EventBus.EVENT_BUS.fireEvent(new ProfileChangedEvent(this, getSelectedProfile()));
+        // Only the versions of selected profile are reloaded once changed on disk.
+        for (Profile profile : getProfileMap().values())
+            if (profile != getSelectedProfile())
+                profile.getRepository().stopWatching();
+        getSelectedProfile().getRepository().startWatching();
         getSelectedProfile().getRepository().refreshVersionsAsync().start();
     }
 
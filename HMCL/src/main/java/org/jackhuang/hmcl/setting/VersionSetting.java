@@ -288,6 +288,40 @@ public final class VersionSetting {
         notCheckGameProperty.set(notCheckGame);
     }
 
+    private final ImmediateBooleanProperty classDataSharingProperty = new ImmediateBooleanProperty(this, "classDataSharing", false);
+
+    public ImmediateBooleanProperty classDataSharingProperty() {
+        return classDataSharingProperty;
+    }
+
+    /**
+     * True if the classes loaded by the game are archived and shared by later launches, requires Java 13 or later.
+     */
+    public boolean isClassDataSharing() {
+        return classDataSharingProperty.get();
+    }
+
+    public void setClassDataSharing(boolean classDataSharing) {
+        classDataSharingProperty.set(classDataSharing);
+    }
+
+    private final ImmediateBooleanProperty structuredLoggingProperty = new ImmediateBooleanProperty(this, "structuredLogging", false);
+
+    public ImmediateBooleanProperty structuredLoggingProperty() {
+        return structuredLoggingProperty;
+    }
+
+    /**
+     * True if the game is launched with the log4j2 configuration of HMCL, so that levels of logs are exact.
+     */
+    public boolean isStructuredLogging() {
+        return structuredLoggingProperty.get();
+    }
+
+    public void setStructuredLogging(boolean structuredLogging) {
+        structuredLoggingProperty.set(structuredLogging);
+    }
+
     private final ImmediateBooleanProperty showLogsProperty = new ImmediateBooleanProperty(this, "showLogs", false);
 
     public ImmediateBooleanProperty showLogsProperty() {
@@ -488,6 +522,8 @@ public final class VersionSetting {
         minecraftArgsProperty.addListener(listener);
         noJVMArgsProperty.addListener(listener);
         notCheckGameProperty.addListener(listener);
+        classDataSharingProperty.addListener(listener);
+        structuredLoggingProperty.addListener(listener);
         showLogsProperty.addListener(listener);
         serverIpProperty.addListener(listener);
         fullscreenProperty.addListener(listener);
@@ -522,6 +558,8 @@ public final class VersionSetting {
                 .setProxyPass(config().getProxyPass())
                 .setPrecalledCommand(getPreLaunchCommand())
                 .setNoGeneratedJVMArgs(isNoJVMArgs())
+                .setClassDataSharing(isClassDataSharing())
+                .setStructuredLogging(isStructuredLogging())
                 .create();
     }
 
@@ -552,6 +590,8 @@ public final class VersionSetting {
             obj.addProperty("fullscreen", src.isFullscreen());
             obj.addProperty("noJVMArgs", src.isNoJVMArgs());
             obj.addProperty("notCheckGame", src.isNotCheckGame());
+            obj.addProperty("classDataSharing", src.isClassDataSharing());
+            obj.addProperty("structuredLogging", src.isStructuredLogging());
             obj.addProperty("showLogs", src.isShowLogs());
             obj.addProperty("gameDir", src.getGameDir());
             obj.addProperty("launcherVisibility", src.getLauncherVisibility().ordinal());
@@ -589,6 +629,8 @@ public final class VersionSetting {
             vs.setFullscreen(Optional.ofNullable(obj.get("fullscreen")).map(JsonElement::getAsBoolean).orElse(false));
             vs.setNoJVMArgs(Optional.ofNullable(obj.get("noJVMArgs")).map(JsonElement::getAsBoolean).orElse(false));
             vs.setNotCheckGame(Optional.ofNullable(obj.get("notCheckGame")).map(JsonElement::getAsBoolean).orElse(false));
+            vs.setClassDataSharing(Optional.ofNullable(obj.get("classDataSharing")).map(JsonElement::getAsBoolean).orElse(false));
+            vs.setStructuredLogging(Optional.ofNullable(obj.get("structuredLogging")).map(JsonElement::getAsBoolean).orElse(false));
             vs.setShowLogs(Optional.ofNullable(obj.get("showLogs")).map(JsonElement::getAsBoolean).orElse(false));
             vs.setLauncherVisibility(LauncherVisibility.values()[Optional.ofNullable(obj.get("launcherVisibility")).map(JsonElement::getAsInt).orElse(1)]);
             vs.setGameDirType(EnumGameDirectory.values()[Optional.ofNullable(obj.get("gameDirType")).map(JsonElement::getAsInt).orElse(0)]);
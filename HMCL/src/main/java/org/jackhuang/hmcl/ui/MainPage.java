@@ -35,6 +35,7 @@ import org.jackhuang.hmcl.event.EventBus;
 import org.jackhuang.hmcl.event.ProfileChangedEvent;
 import org.jackhuang.hmcl.event.RefreshedVersionsEvent;
 import org.jackhuang.hmcl.event.RefreshingVersionsEvent;
+import org.jackhuang.hmcl.event.VersionsChangedEvent;
 import org.jackhuang.hmcl.game.*;
 import org.jackhuang.hmcl.mod.MismatchedModpackTypeException;
 import org.jackhuang.hmcl.mod.UnsupportedModpackException;
@@ -91,6 +92,10 @@ public final class MainPage extends StackPane implements DecoratorPage {
             if (event.getSource() == profile.getRepository())
                 loadVersions((HMCLGameRepository) event.getSource());
         });
+        EventBus.EVENT_BUS.channel(VersionsChangedEvent.class).register(event -> {
+            if (event.getSource() == profile.getRepository())
+                loadVersions((HMCLGameRepository) event.getSource());
+        });
         EventBus.EVENT_BUS.channel(RefreshingVersionsEvent.class).register(event -> {
             if (event.getSource() == profile.getRepository())
                 // This will occupy 0.5s. Too slow!
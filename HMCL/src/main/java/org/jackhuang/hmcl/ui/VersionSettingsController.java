@@ -73,6 +73,8 @@ public final class VersionSettingsController {
     @FXML private Label lblPhysicalMemory;
     @FXML private JFXToggleButton chkNoJVMArgs;
     @FXML private JFXToggleButton chkNoGameCheck;
+    @FXML private JFXToggleButton chkClassDataSharing;
+    @FXML private JFXToggleButton chkStructuredLogging;
     @FXML private MultiFileItem<Boolean> globalItem;
     @FXML private MultiFileItem<JavaVersion> javaItem;
     @FXML private MultiFileItem<EnumGameDirectory> gameDirItem;
@@ -136,6 +138,8 @@ public final class VersionSettingsController {
             FXUtils.unbindString(txtServerIP, lastVersionSetting.serverIpProperty());
             FXUtils.unbindBoolean(chkFullscreen, lastVersionSetting.fullscreenProperty());
             FXUtils.unbindBoolean(chkNoGameCheck, lastVersionSetting.notCheckGameProperty());
+            FXUtils.unbindBoolean(chkClassDataSharing, lastVersionSetting.classDataSharingProperty());
+            FXUtils.unbindBoolean(chkStructuredLogging, lastVersionSetting.structuredLoggingProperty());
             FXUtils.unbindBoolean(chkNoJVMArgs, lastVersionSetting.noJVMArgsProperty());
             FXUtils.unbindBoolean(chkShowLogs, lastVersionSetting.showLogsProperty());
             FXUtils.unbindEnum(cboLauncherVisibility);
@@ -164,6 +168,8 @@ public final class VersionSettingsController {
         FXUtils.bindString(txtServerIP, versionSetting.serverIpProperty());
         FXUtils.bindBoolean(chkFullscreen, versionSetting.fullscreenProperty());
         FXUtils.bindBoolean(chkNoGameCheck, versionSetting.notCheckGameProperty());
+        FXUtils.bindBoolean(chkClassDataSharing, versionSetting.classDataSharingProperty());
+        FXUtils.bindBoolean(chkStructuredLogging, versionSetting.structuredLoggingProperty());
         FXUtils.bindBoolean(chkNoJVMArgs, versionSetting.noJVMArgsProperty());
         FXUtils.bindBoolean(chkShowLogs, versionSetting.showLogsProperty());
         FXUtils.bindEnum(cboLauncherVisibility, versionSetting.launcherVisibilityProperty());
@@ -58,7 +58,7 @@ public interface TaskExecutorDialogWizardDisplayer extends AbstractWizardDisplay
         }
 
         JFXUtilities.runInFX(() -> {
-            TaskExecutor executor = task.executor(new TaskListener() {
+            TaskExecutor executor = task.asyncExecutor(new TaskListener() {
                 @Override
                 public void onStop(boolean success, TaskExecutor executor) {
                     JFXUtilities.runInFX(() -> {
@@ -37,9 +37,12 @@ import org.jackhuang.hmcl.ui.wizard.Refreshable;
 import org.jackhuang.hmcl.ui.wizard.WizardController;
 import org.jackhuang.hmcl.ui.wizard.WizardPage;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 public final class VersionsPage extends StackPane implements WizardPage, Refreshable {
@@ -70,7 +73,7 @@ public final class VersionsPage extends StackPane implements WizardPage, Refresh
 
     private final TransitionHandler transitionHandler = new TransitionHandler(this);
     private final VersionList<?> versionList;
-    private TaskExecutor executor;
+    private volatile TaskExecutor executor;
 
     public VersionsPage(WizardController controller, String title, String gameVersion, DownloadProvider downloadProvider, String libraryId, Runnable callback) {
         this.title = title;
@@ -98,54 +101,80 @@ public final class VersionsPage extends StackPane implements WizardPage, Refresh
             controller.getSettings().put(libraryId, list.getSelectionModel().getSelectedItem().getRemoteVersion());
             callback.run();
         });
-        refresh();
+        load();
     }
 
     private List<VersionsPageItem> loadVersions() {
-        return versionList.getVersions(gameVersion).stream()
-                .filter(it -> {
-                    switch (it.getVersionType()) {
-                        case RELEASE:
-                            return chkRelease.isSelected();
-                        case SNAPSHOT:
-                            return chkSnapshot.isSelected();
-                        case OLD:
-                            return chkOld.isSelected();
-                        default:
-                            return true;
-                    }
-                })
-                .sorted()
-                .map(VersionsPageItem::new).collect(Collectors.toList());
+        Set<RemoteVersion.Type> types = EnumSet.of(RemoteVersion.Type.UNCATEGORIZED);
+        if (chkRelease.isSelected())
+            types.add(RemoteVersion.Type.RELEASE);
+        if (chkSnapshot.isSelected())
+            types.add(RemoteVersion.Type.SNAPSHOT);
+        if (chkOld.isSelected())
+            types.add(RemoteVersion.Type.OLD);
+
+        return versionList.getVersions(gameVersion, types).stream()
+                .map(VersionsPageItem::new).collect(Collectors.toList()); // already sorted by version list
+    }
+
+    /**
+     * Shows the version list at once if it is cached, and revalidates it in background.
+     */
+    private void load() {
+        getChildren().setAll(spinner);
+        executor = versionList.loadAsync(downloadProvider).finalized((variables, isDependentsSucceeded) -> {
+            if (isDependentsSucceeded) {
+                showVersions();
+                revalidate();
+            } else {
+                showFailed();
+            }
+        }).executor().start();
+    }
+
+    private void revalidate() {
+        List<RemoteVersion> cached = new ArrayList<>(versionList.getVersions(gameVersion));
+        executor = versionList.refreshAsync(downloadProvider).finalized((variables, isDependentsSucceeded) -> {
+            // Keep showing the cached version list if the server cannot be reached.
+            if (isDependentsSucceeded && !cached.equals(new ArrayList<>(versionList.getVersions(gameVersion))))
+                showVersions();
+        }).executor().start();
     }
 
     @Override
     public void refresh() {
         getChildren().setAll(spinner);
         executor = versionList.refreshAsync(downloadProvider).finalized((variables, isDependentsSucceeded) -> {
-            if (isDependentsSucceeded) {
-                List<VersionsPageItem> items = loadVersions();
-
-                Platform.runLater(() -> {
-                    if (versionList.getVersions(gameVersion).isEmpty()) {
-                        transitionHandler.setContent(emptyPane, ContainerAnimations.FADE.getAnimationProducer());
-                    } else {
-                        if (items.isEmpty()) {
-                            chkRelease.setSelected(true);
-                            chkSnapshot.setSelected(true);
-                            chkOld.setSelected(true);
-                        } else {
-                            list.getItems().setAll(items);
-                        }
-                        transitionHandler.setContent(centrePane, ContainerAnimations.FADE.getAnimationProducer());
-                    }
-                });
+            if (isDependentsSucceeded)
+                showVersions();
+            else
+                showFailed();
+        }).executor().start();
+    }
+
+    private void showVersions() {
+        List<VersionsPageItem> items = loadVersions();
+
+        Platform.runLater(() -> {
+            if (versionList.getVersions(gameVersion).isEmpty()) {
+                transitionHandler.setContent(emptyPane, ContainerAnimations.FADE.getAnimationProducer());
             } else {
-                Platform.runLater(() -> {
-                    transitionHandler.setContent(failedPane, ContainerAnimations.FADE.getAnimationProducer());
-                });
+                if (items.isEmpty()) {
+                    chkRelease.setSelected(true);
+                    chkSnapshot.setSelected(true);
+                    chkOld.setSelected(true);
+                } else {
+                    list.getItems().setAll(items);
+                }
+                transitionHandler.setContent(centrePane, ContainerAnimations.FADE.getAnimationProducer());
             }
-        }).executor().start();
+        });
+    }
+
+    private void showFailed() {
+        Platform.runLater(() -> {
+            transitionHandler.setContent(failedPane, ContainerAnimations.FADE.getAnimationProducer());
+        });
     }
 
     @Override
@@ -35,6 +35,7 @@ class HMCLDownloadTask extends FileDownloadTask {
     public HMCLDownloadTask(RemoteVersion version, Path target) {
         super(NetworkUtils.toURL(version.getUrl()), target.toFile(), version.getIntegrityCheck());
         archiveFormat = version.getType();
+        setSegments(4);
     }
 
     @Override
@@ -50,6 +51,8 @@ class HMCLDownloadTask extends FileDownloadTask {
 
                 case PACK_XZ:
                     byte[] raw = Files.readAllBytes(target);
+                    // The downloaded file may be hard linked to the cache repository, never overwrite it in place.
+                    Files.delete(target);
                     try (InputStream in = new XZInputStream(new ByteArrayInputStream(raw));
                             JarOutputStream out = new JarOutputStream(Files.newOutputStream(target))) {
                         Pack200.newUnpacker().unpack(in, out);
@@ -0,0 +1,185 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.download;
+
+import org.jackhuang.hmcl.task.DownloadStatistics;
+import org.jackhuang.hmcl.task.Task;
+import org.jackhuang.hmcl.util.Constants;
+import org.jackhuang.hmcl.util.Logging;
+import org.jackhuang.hmcl.util.NetworkUtils;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+/**
+ * The download provider that routes each request to the mirror
+ * which is currently the fastest and healthy.
+ *
+ * Mirrors are ranked by {@link DownloadStatistics}, which is fed by finished downloads
+ * and by {@link #probe()}. Since every candidate URL is handed to
+ * {@link org.jackhuang.hmcl.task.FileDownloadTask}, a failing mirror is replaced by
+ * the next candidate when retrying, without restarting the whole task graph,
+ * and candidates are ranked again by the statistics at the time of each attempt.
+ *
+ * @author huangyuhui
+ */
+public class AdaptiveDownloadProvider implements DownloadProvider {
+
+    private final List<DownloadProvider> candidates;
+    private final DownloadStatistics statistics;
+    private final AtomicBoolean probed = new AtomicBoolean(false);
+
+    public AdaptiveDownloadProvider(List<DownloadProvider> candidates) {
+        this(candidates, DownloadStatistics.INSTANCE);
+    }
+
+    public AdaptiveDownloadProvider(List<DownloadProvider> candidates, DownloadStatistics statistics) {
+        if (candidates.isEmpty())
+            throw new IllegalArgumentException("At least one download provider is required");
+
+        this.candidates = Collections.unmodifiableList(new ArrayList<>(candidates));
+        this.statistics = statistics;
+    }
+
+    public List<DownloadProvider> getCandidates() {
+        return candidates;
+    }
+
+    /**
+     * @return the candidate providers, the fastest one first.
+     */
+    public List<DownloadProvider> getRankedCandidates() {
+        return rank(candidates, provider -> NetworkUtils.toURL(provider.getAssetBaseURL()));
+    }
+
+    @Override
+    public String getVersionListURL() {
+        return rank(candidates, provider -> NetworkUtils.toURL(provider.getVersionListURL())).get(0).getVersionListURL();
+    }
+
+    @Override
+    public String getAssetBaseURL() {
+        return getRankedCandidates().get(0).getAssetBaseURL();
+    }
+
+    @Override
+    public String injectURL(String baseURL) {
+        return injectURLWithCandidates(baseURL).get(0).toString();
+    }
+
+    @Override
+    public List<URL> injectURLWithCandidates(String baseURL) {
+        return rank(candidates.stream()
+                .map(provider -> provider.injectURL(baseURL))
+                .distinct()
+                .map(NetworkUtils::toURL)
+                .collect(Collectors.toList()), Function.identity());
+    }
+
+    @Override
+    public List<URL> getAssetObjectCandidates(String location) {
+        return rank(candidates.stream()
+                .map(provider -> provider.getAssetBaseURL() + location)
+                .distinct()
+                .map(NetworkUtils::toURL)
+                .collect(Collectors.toList()), Function.identity());
+    }
+
+    @Override
+    public VersionList<?> getVersionListById(String id) {
+        return getRankedCandidates().get(0).getVersionListById(id);
+    }
+
+    /**
+     * Measures the round trip time to every host of every mirror, so that
+     * mirrors can be ranked before any file is downloaded.
+     * Called automatically when this provider is used for the first time.
+     */
+    public void probe() {
+        Map<String, URL> hosts = new LinkedHashMap<>();
+        for (DownloadProvider provider : candidates)
+            for (String url : getProbedURLs(provider)) {
+                URL u = NetworkUtils.toURL(url);
+                hosts.putIfAbsent(u.getHost(), u);
+            }
+
+        for (URL url : hosts.values()) {
+            HttpURLConnection con = null;
+            try {
+                long startTime = System.nanoTime();
+                con = NetworkUtils.createConnection(url);
+                con.setRequestMethod("HEAD");
+                con.connect();
+                // Base URLs may not be documents, any response except server errors means the host works.
+                if (con.getResponseCode() / 100 == 5)
+                    throw new IOException("Server error, response code: " + con.getResponseCode());
+                statistics.recordLatency(url, System.nanoTime() - startTime);
+            } catch (IOException e) {
+                Logging.LOG.log(Level.WARNING, "Unable to probe mirror " + url, e);
+                statistics.recordFailure(url);
+            } finally {
+                if (con != null)
+                    con.disconnect();
+            }
+        }
+    }
+
+    /**
+     * @return the URLs on all hosts that {@code provider} downloads from, i.e. version lists, assets and libraries.
+     */
+    private static List<String> getProbedURLs(DownloadProvider provider) {
+        List<String> urls = new ArrayList<>();
+        urls.add(provider.getVersionListURL());
+        urls.add(provider.getAssetBaseURL());
+        for (String url : PROBED_MOJANG_URLS)
+            urls.add(provider.injectURL(url));
+        return urls;
+    }
+
+    private static final String[] PROBED_MOJANG_URLS = {
+            Constants.DEFAULT_LIBRARY_URL,
+            "https://launcher.mojang.com/",
+            "https://launchermeta.mojang.com/"
+    };
+
+    public Task probeAsync() {
+        return Task.of(this::probe);
+    }
+
+    private <T> List<T> rank(List<T> list, Function<T, URL> urlMapper) {
+        // Rank with the default scores until the first probe finishes.
+        if (probed.compareAndSet(false, true))
+            probeAsync().start();
+
+        // Statistics may change concurrently, take a snapshot before sorting.
+        Map<T, Double> expectedTimes = new IdentityHashMap<>();
+        for (T item : list)
+            expectedTimes.put(item, statistics.getExpectedTime(urlMapper.apply(item)));
+
+        List<T> ranked = new ArrayList<>(list);
+        // Stable sort, preferring the former candidates when scores are equal.
+        ranked.sort(Comparator.comparingDouble(expectedTimes::get));
+        return ranked;
+    }
+}
@@ -17,6 +17,12 @@
  */
 package org.jackhuang.hmcl.download;
 
+import org.jackhuang.hmcl.util.NetworkUtils;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * The service provider that provides Minecraft online file downloads.
  *
@@ -35,10 +41,31 @@ public interface DownloadProvider {
      * this method provides a way to change them.
      *
      * @param baseURL original URL provided by Mojang and Forge.
-     * @return the URL that is equivalent to [baseURL], but belongs to your own service provider.
+     * @return the URL that is equivalent to {@code baseURL}, but belongs to your own service provider.
      */
     String injectURL(String baseURL);
 
+    /**
+     * The URLs that are equivalent to {@code baseURL}, in the order they should be tried.
+     *
+     * @param baseURL original URL provided by Mojang and Forge.
+     * @return the candidate URLs, the first one is preferred.
+     * @see #injectURL(String)
+     */
+    default List<URL> injectURLWithCandidates(String baseURL) {
+        return Collections.singletonList(NetworkUtils.toURL(injectURL(baseURL)));
+    }
+
+    /**
+     * The URLs of the asset object, in the order they should be tried.
+     *
+     * @param location the location of the asset object, relative to {@link #getAssetBaseURL()}.
+     * @return the candidate URLs, the first one is preferred.
+     */
+    default List<URL> getAssetObjectCandidates(String location) {
+        return Collections.singletonList(NetworkUtils.toURL(getAssetBaseURL() + location));
+    }
+
     /**
      * the specific version list that this download provider provides. i.e. "forge", "liteloader", "game", "optifine"
      *
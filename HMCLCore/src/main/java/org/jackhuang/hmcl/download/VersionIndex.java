@@ -0,0 +1,170 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.download;
+
+import org.jackhuang.hmcl.util.Immutable;
+
+import java.util.*;
+
+/**
+ * An immutable snapshot of a remote version list, indexed by game version,
+ * by version of the remote version, and by type, so that filtering by type does not scan the list.
+ * All lists are sorted in natural order of remote versions, i.e. newest first.
+ *
+ * @param <T> The subclass of {@code RemoteVersion}, the type of RemoteVersion.
+ *
+ * @author huangyuhui
+ */
+@Immutable
+public final class VersionIndex<T extends RemoteVersion> {
+
+    private final Map<String, List<T>> byGameVersion;
+    private final Map<String, Map<String, T>> bySelfVersion;
+    private final Map<String, Map<RemoteVersion.Type, List<T>>> byGameVersionAndType;
+    private final Map<RemoteVersion.Type, List<T>> byType;
+    private final List<T> versions;
+
+    private VersionIndex(Map<String, List<T>> byGameVersion, Map<String, Map<String, T>> bySelfVersion,
+                         Map<String, Map<RemoteVersion.Type, List<T>>> byGameVersionAndType, Map<RemoteVersion.Type, List<T>> byType, List<T> versions) {
+        this.byGameVersion = byGameVersion;
+        this.bySelfVersion = bySelfVersion;
+        this.byGameVersionAndType = byGameVersionAndType;
+        this.byType = byType;
+        this.versions = versions;
+    }
+
+    public boolean isEmpty() {
+        return versions.isEmpty();
+    }
+
+    /**
+     * @return all remote versions.
+     */
+    public List<T> getVersions() {
+        return versions;
+    }
+
+    /**
+     * @param gameVersion the Minecraft version that remote versions belong to
+     * @return the remote versions that specifics Minecraft version.
+     */
+    public List<T> getVersions(String gameVersion) {
+        return byGameVersion.getOrDefault(gameVersion, Collections.emptyList());
+    }
+
+    /**
+     * @param gameVersion the Minecraft version that remote versions belong to, null for all game versions.
+     * @param types the types of remote versions to return.
+     * @return the remote versions of the types, in natural order.
+     */
+    public List<T> getVersions(String gameVersion, Set<RemoteVersion.Type> types) {
+        Map<RemoteVersion.Type, List<T>> lists = gameVersion == null ? byType : byGameVersionAndType.getOrDefault(gameVersion, Collections.emptyMap());
+        if (types.containsAll(lists.keySet()))
+            return gameVersion == null ? versions : getVersions(gameVersion);
+
+        List<List<T>> selected = new ArrayList<>();
+        for (RemoteVersion.Type type : types)
+            if (lists.containsKey(type))
+                selected.add(lists.get(type));
+        if (selected.size() == 1)
+            return selected.get(0);
+        return merge(selected);
+    }
+
+    /**
+     * Merges lists in natural order into one.
+     */
+    private static <T extends Comparable<? super T>> List<T> merge(List<List<T>> lists) {
+        int size = 0;
+        for (List<T> list : lists)
+            size += list.size();
+
+        List<T> result = new ArrayList<>(size);
+        int[] positions = new int[lists.size()];
+        while (result.size() < size) {
+            int min = -1;
+            for (int i = 0; i < lists.size(); i++)
+                if (positions[i] < lists.get(i).size()
+                        && (min < 0 || lists.get(i).get(positions[i]).compareTo(lists.get(min).get(positions[min])) < 0))
+                    min = i;
+            result.add(lists.get(min).get(positions[min]++));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @param gameVersion the Minecraft version that remote versions belong to
+     * @param selfVersion the version of the remote version.
+     * @return the specific remote version, empty if it is not found.
+     */
+    public Optional<T> getVersion(String gameVersion, String selfVersion) {
+        return Optional.ofNullable(bySelfVersion.getOrDefault(gameVersion, Collections.emptyMap()).get(selfVersion));
+    }
+
+    private static final VersionIndex<?> EMPTY = new Builder<>().build();
+
+    @SuppressWarnings("unchecked")
+    public static <T extends RemoteVersion> VersionIndex<T> empty() {
+        return (VersionIndex<T>) EMPTY;
+    }
+
+    public static final class Builder<T extends RemoteVersion> {
+        private final Map<String, SortedSet<T>> versions = new HashMap<>();
+
+        /**
+         * Versions comparing equal to an added one in the same game version are ignored.
+         *
+         * @param gameVersion the Minecraft version that the remote version belongs to
+         * @return this
+         */
+        public Builder<T> add(String gameVersion, T version) {
+            versions.computeIfAbsent(gameVersion, key -> new TreeSet<>()).add(version);
+            return this;
+        }
+
+        public VersionIndex<T> build() {
+            Map<String, List<T>> byGameVersion = new HashMap<>();
+            Map<String, Map<String, T>> bySelfVersion = new HashMap<>();
+            Map<String, Map<RemoteVersion.Type, List<T>>> byGameVersionAndType = new HashMap<>();
+            // Not a set, since versions of different game versions may compare equal.
+            List<T> all = new ArrayList<>();
+
+            for (Map.Entry<String, SortedSet<T>> entry : versions.entrySet()) {
+                byGameVersion.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+                Map<String, T> selfVersions = new HashMap<>();
+                for (T version : entry.getValue())
+                    selfVersions.put(version.getSelfVersion(), version);
+                bySelfVersion.put(entry.getKey(), selfVersions);
+                byGameVersionAndType.put(entry.getKey(), groupByType(entry.getValue()));
+                all.addAll(entry.getValue());
+            }
+            // Stable sort, so versions comparing equal keep their order.
+            Collections.sort(all);
+
+            return new VersionIndex<>(byGameVersion, bySelfVersion, byGameVersionAndType, groupByType(all), Collections.unmodifiableList(all));
+        }
+
+        private static <T extends RemoteVersion> Map<RemoteVersion.Type, List<T>> groupByType(Collection<T> versions) {
+            Map<RemoteVersion.Type, List<T>> byType = new EnumMap<>(RemoteVersion.Type.class);
+            for (T version : versions)
+                byType.computeIfAbsent(version.getVersionType(), key -> new ArrayList<>()).add(version);
+            byType.replaceAll((key, value) -> Collections.unmodifiableList(value));
+            return byType;
+        }
+    }
+}
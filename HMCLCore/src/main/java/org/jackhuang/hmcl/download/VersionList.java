@@ -18,10 +18,8 @@
 package org.jackhuang.hmcl.download;
 
 import org.jackhuang.hmcl.task.Task;
-import org.jackhuang.hmcl.util.SimpleMultimap;
 
 import java.util.*;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * The remote version list.
@@ -33,50 +31,75 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public abstract class VersionList<T extends RemoteVersion> {
 
     /**
-     * the remote version list.
-     * key: game version.
-     * values: corresponding remote versions.
+     * The snapshot of the remote version list, replaced as a whole when refreshed,
+     * so that readers never see a partially refreshed list and never lock.
      */
-    protected final SimpleMultimap<String, T> versions = new SimpleMultimap<String, T>(HashMap::new, TreeSet::new);
+    private volatile VersionIndex<T> index = VersionIndex.empty();
 
     /**
      * True if the version list has been loaded.
      */
     public boolean isLoaded() {
-        return !versions.isEmpty();
+        return !index.isEmpty();
     }
 
     public abstract boolean hasType();
 
-    protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    public VersionIndex<T> getIndex() {
+        return index;
+    }
+
+    /**
+     * Replaces the remote version list by the newly loaded one.
+     */
+    protected void publish(VersionIndex<T> index) {
+        this.index = Objects.requireNonNull(index);
+    }
+
+    /**
+     * @param downloadProvider DownloadProvider
+     * @return the task to reload the remote version list.
+     */
+    public Task refreshAsync(DownloadProvider downloadProvider) {
+        return refreshAsync(downloadProvider, false);
+    }
 
     /**
      * @param downloadProvider DownloadProvider
+     * @param allowStale true if the version list cached on disk can be used without revalidating it.
      * @return the task to reload the remote version list.
+     * @see org.jackhuang.hmcl.util.HttpCache
      */
-    public abstract Task refreshAsync(DownloadProvider downloadProvider);
+    protected abstract Task refreshAsync(DownloadProvider downloadProvider, boolean allowStale);
 
+    /**
+     * Loads the version list if it has not been loaded, from the disk cache if present.
+     * Call {@link #refreshAsync(DownloadProvider)} afterwards to revalidate it.
+     *
+     * @param downloadProvider DownloadProvider
+     * @return the task to load the remote version list.
+     */
     public Task loadAsync(DownloadProvider downloadProvider) {
-        return Task.ofThen(variables -> {
-            lock.readLock().lock();
-            boolean loaded;
-
-            try {
-                loaded = isLoaded();
-            } finally {
-                lock.readLock().unlock();
-            }
-            return loaded ? null : refreshAsync(downloadProvider);
-        });
+        return Task.ofThen(variables -> isLoaded() ? null : refreshAsync(downloadProvider, true));
+    }
+
+    /**
+     * Loads the version list like {@link #loadAsync(DownloadProvider)}, and revalidates it
+     * if the specific remote version is not found, since the list may be loaded from a stale disk cache
+     * written before the remote version was published.
+     *
+     * @param downloadProvider DownloadProvider
+     * @param gameVersion the Minecraft version that remote versions belong to
+     * @param remoteVersion the version of the remote version.
+     * @return the task to load the remote version list.
+     */
+    public Task loadAsync(DownloadProvider downloadProvider, String gameVersion, String remoteVersion) {
+        return loadAsync(downloadProvider)
+                .then(variables -> getVersion(gameVersion, remoteVersion).isPresent() ? null : refreshAsync(downloadProvider, false));
     }
 
     protected Collection<T> getVersionsImpl(String gameVersion) {
-        lock.readLock().lock();
-        try {
-            return versions.get(gameVersion);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return index.getVersions(gameVersion);
     }
 
     /**
@@ -89,6 +112,21 @@ public abstract class VersionList<T extends RemoteVersion> {
         return Collections.unmodifiableCollection(getVersionsImpl(gameVersion));
     }
 
+    protected List<T> getVersionsImpl(String gameVersion, Set<RemoteVersion.Type> types) {
+        return index.getVersions(gameVersion, types);
+    }
+
+    /**
+     * Get the remote versions of the types that specifics Minecraft version, without scanning all of them.
+     *
+     * @param gameVersion the Minecraft version that remote versions belong to
+     * @param types the types of remote versions
+     * @return the list of specific remote versions, in natural order
+     */
+    public final List<T> getVersions(String gameVersion, Set<RemoteVersion.Type> types) {
+        return Collections.unmodifiableList(getVersionsImpl(gameVersion, types));
+    }
+
     /**
      * Get the specific remote version.
      *
@@ -97,15 +135,6 @@ public abstract class VersionList<T extends RemoteVersion> {
      * @return the specific remote version, null if it is not found.
      */
     public final Optional<T> getVersion(String gameVersion, String remoteVersion) {
-        lock.readLock().lock();
-        try {
-            T result = null;
-            for (T it : versions.get(gameVersion))
-                if (remoteVersion.equals(it.getSelfVersion()))
-                    result = it;
-            return Optional.ofNullable(result);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return index.getVersion(gameVersion, remoteVersion);
     }
 }
@@ -52,7 +52,7 @@ public final class ForgeInstallTask extends TaskResult<Version> {
     private final List<Task> dependencies = new LinkedList<>();
 
     private Task downloadFileTask() {
-        return new FileDownloadTask(NetworkUtils.toURL(remote.getUrl()), installer);
+        return new FileDownloadTask(NetworkUtils.toURL(remote.getUrl()), installer).setSegments(4);
     }
 
     public ForgeInstallTask(DefaultDependencyManager dependencyManager, Version version, ForgeRemoteVersion remoteVersion) {
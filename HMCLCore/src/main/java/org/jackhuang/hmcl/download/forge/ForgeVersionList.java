@@ -18,10 +18,10 @@
 package org.jackhuang.hmcl.download.forge;
 
 import org.jackhuang.hmcl.download.DownloadProvider;
+import org.jackhuang.hmcl.download.VersionIndex;
 import org.jackhuang.hmcl.download.VersionList;
-import org.jackhuang.hmcl.task.GetTask;
+import org.jackhuang.hmcl.task.GetJsonTask;
 import org.jackhuang.hmcl.task.Task;
-import org.jackhuang.hmcl.util.Constants;
 import org.jackhuang.hmcl.util.NetworkUtils;
 import org.jackhuang.hmcl.util.StringUtils;
 import org.jackhuang.hmcl.util.VersionNumber;
@@ -45,8 +45,9 @@ public final class ForgeVersionList extends VersionList<ForgeRemoteVersion> {
     }
 
     @Override
-    public Task refreshAsync(DownloadProvider downloadProvider) {
-        final GetTask task = new GetTask(NetworkUtils.toURL(downloadProvider.injectURL(FORGE_LIST)));
+    protected Task refreshAsync(DownloadProvider downloadProvider, boolean allowStale) {
+        final GetJsonTask<ForgeVersionRoot> task = new GetJsonTask<ForgeVersionRoot>(NetworkUtils.toURL(downloadProvider.injectURL(FORGE_LIST)), ForgeVersionRoot.class)
+                .setCacheable(true).setAllowStale(allowStale);
         final List<Task> dependents = Collections.singletonList(task);
         return new Task() {
 
@@ -57,41 +58,35 @@ public final class ForgeVersionList extends VersionList<ForgeRemoteVersion> {
 
             @Override
             public void execute() {
-                lock.writeLock().lock();
+                VersionIndex.Builder<ForgeRemoteVersion> builder = new VersionIndex.Builder<>();
+                ForgeVersionRoot root = task.getResult();
 
-                try {
-                    ForgeVersionRoot root = Constants.GSON.fromJson(task.getResult(), ForgeVersionRoot.class);
-                    if (root == null)
-                        return;
-                    versions.clear();
-
-                    for (Map.Entry<String, int[]> entry : root.getGameVersions().entrySet()) {
-                        Optional<String> gameVersion = VersionNumber.parseVersion(entry.getKey());
-                        if (!gameVersion.isPresent())
+                for (Map.Entry<String, int[]> entry : root.getGameVersions().entrySet()) {
+                    Optional<String> gameVersion = VersionNumber.parseVersion(entry.getKey());
+                    if (!gameVersion.isPresent())
+                        continue;
+                    for (int v : entry.getValue()) {
+                        ForgeVersion version = root.getNumber().get(v);
+                        if (version == null)
                             continue;
-                        for (int v : entry.getValue()) {
-                            ForgeVersion version = root.getNumber().get(v);
-                            if (version == null)
-                                continue;
-                            String jar = null;
-                            for (String[] file : version.getFiles())
-                                if (file.length > 1 && "installer".equals(file[1])) {
-                                    String classifier = version.getGameVersion() + "-" + version.getVersion()
-                                            + (StringUtils.isNotBlank(version.getBranch()) ? "-" + version.getBranch() : "");
-                                    String fileName = root.getArtifact() + "-" + classifier + "-" + file[1] + "." + file[0];
-                                    jar = downloadProvider.injectURL(root.getWebPath() + classifier + "/" + fileName);
-                                }
+                        String jar = null;
+                        for (String[] file : version.getFiles())
+                            if (file.length > 1 && "installer".equals(file[1])) {
+                                String classifier = version.getGameVersion() + "-" + version.getVersion()
+                                        + (StringUtils.isNotBlank(version.getBranch()) ? "-" + version.getBranch() : "");
+                                String fileName = root.getArtifact() + "-" + classifier + "-" + file[1] + "." + file[0];
+                                jar = downloadProvider.injectURL(root.getWebPath() + classifier + "/" + fileName);
+                            }
 
-                            if (jar == null)
-                                continue;
-                            versions.put(gameVersion.get(), new ForgeRemoteVersion(
-                                    version.getGameVersion(), version.getVersion(), jar
-                            ));
-                        }
+                        if (jar == null)
+                            continue;
+                        builder.add(gameVersion.get(), new ForgeRemoteVersion(
+                                version.getGameVersion(), version.getVersion(), jar
+                        ));
                     }
-                } finally {
-                    lock.writeLock().unlock();
                 }
+
+                publish(builder.build());
             }
 
         };
@@ -1,7 +1,7 @@
 /*
  * Hello Minecraft! Launcher.
  * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
- * 
+ *
  * This program is free software: you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
  * the Free Software Foundation, either version 3 of the License, or
@@ -17,38 +17,81 @@
  */
 package org.jackhuang.hmcl.download.game;
 
+import com.google.gson.JsonParseException;
 import org.jackhuang.hmcl.download.AbstractDependencyManager;
+import org.jackhuang.hmcl.game.AssetIndexInfo;
 import org.jackhuang.hmcl.game.AssetObject;
+import org.jackhuang.hmcl.game.CompactAssetIndex;
+import org.jackhuang.hmcl.game.GameRepository;
 import org.jackhuang.hmcl.game.Version;
-import org.jackhuang.hmcl.task.FileDownloadTask;
-import org.jackhuang.hmcl.task.FileDownloadTask.IntegrityCheck;
+import org.jackhuang.hmcl.task.DownloadStatistics;
+import org.jackhuang.hmcl.task.Schedulers;
 import org.jackhuang.hmcl.task.Task;
+import org.jackhuang.hmcl.util.CacheRepository;
+import org.jackhuang.hmcl.util.ChecksumMismatchException;
 import org.jackhuang.hmcl.util.FileUtils;
+import org.jackhuang.hmcl.util.Hex;
+import org.jackhuang.hmcl.util.IOUtils;
 import org.jackhuang.hmcl.util.Logging;
 import org.jackhuang.hmcl.util.NetworkUtils;
+import org.jackhuang.hmcl.util.VerificationIndex;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
-import static org.jackhuang.hmcl.util.DigestUtils.digest;
-import static org.jackhuang.hmcl.util.Hex.encodeHex;
+import static org.jackhuang.hmcl.util.DigestUtils.getDigest;
 
 /**
+ * Downloads all missing asset objects of a version.
+ *
+ * The asset index is read by {@link CompactAssetIndex} and objects that already exist and are verified
+ * by {@link VerificationIndex} are skipped.
+ * The remaining objects are downloaded in batches of {@link #BATCH_SIZE} objects on the download scheduler,
+ * instead of creating a {@link org.jackhuang.hmcl.task.FileDownloadTask} for each of thousands of objects.
+ * Each batch takes one connection slot of the host it downloads from, and is submitted again after it finishes,
+ * so that other downloads sharing the host are served in between.
+ * A failed object is queued again for the candidate host that is the fastest at that time, except the host that failed.
+ * Every object is counted as finished exactly once, either downloaded or failed, so that this task always ends.
+ * The progress of all objects is reported by this task.
  *
  * @author huangyuhui
  */
 public final class GameAssetDownloadTask extends Task {
-    
+
     private final AbstractDependencyManager dependencyManager;
     private final Version version;
-    private final GameAssetRefreshTask refreshTask;
+    private final AssetIndexInfo assetIndexInfo;
+    private final File assetIndexFile;
     private final List<Task> dependents = new LinkedList<>();
-    private final List<Task> dependencies = new LinkedList<>();
+
+    // The attempts waiting for a batch, and the number of batches submitted, of each host.
+    private final Map<String, Queue<Attempt>> pending = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> batches = new ConcurrentHashMap<>();
+    private final Queue<Future<?>> futures = new ConcurrentLinkedQueue<>();
+    private final Queue<Exception> exceptions = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger finished = new AtomicInteger();
+    private final AtomicInteger remaining = new AtomicInteger();
+    private final AtomicLong downloadedBytes = new AtomicLong();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile boolean stopped = false;
 
     /**
      * Constructor.
@@ -59,8 +102,11 @@ public final class GameAssetDownloadTask extends Task {
     public GameAssetDownloadTask(AbstractDependencyManager dependencyManager, Version version) {
         this.dependencyManager = dependencyManager;
         this.version = version;
-        this.refreshTask = new GameAssetRefreshTask(dependencyManager, version);
-        this.dependents.add(refreshTask);
+        this.assetIndexInfo = version.getAssetIndex();
+        this.assetIndexFile = dependencyManager.getGameRepository().getIndexFile(version.getId(), assetIndexInfo.getId());
+
+        if (!assetIndexFile.exists())
+            dependents.add(new GameAssetIndexDownloadTask(dependencyManager, version));
     }
 
     @Override
@@ -68,30 +114,308 @@ public final class GameAssetDownloadTask extends Task {
         return dependents;
     }
 
-    @Override
-    public List<Task> getDependencies() {
-        return dependencies;
-    }
-    
     @Override
     public void execute() throws Exception {
-        for (Map.Entry<File, AssetObject> entry : refreshTask.getResult()) {
+        List<AssetObject> missing = findMissingObjects();
+        if (missing.isEmpty())
+            return;
+
+        int total = missing.size();
+        remaining.set(total);
+        Logging.LOG.info("Downloading " + total + " asset objects of " + version.getId());
+
+        boolean succeeded = false;
+        try {
+            for (AssetObject assetObject : missing)
+                enqueue(new Attempt(assetObject, 0, null));
+
+            long lastDownloaded = 0, lastTime = System.currentTimeMillis();
+            while (!done.await(1, TimeUnit.SECONDS)) {
+                long downloaded = downloadedBytes.get();
+                long now = System.currentTimeMillis();
+                updateProgress(finished.get(), total);
+                updateMessage((downloaded - lastDownloaded) * 1000 / Math.max(1, now - lastTime) / 1024 + "KB/s");
+                lastDownloaded = downloaded;
+                lastTime = now;
+            }
+            if (remaining.get() > 0)
+                throw new InterruptedException();
+            updateProgress(finished.get(), total);
+            succeeded = true;
+        } finally {
+            if (!succeeded) {
+                stopped = true;
+                for (Future<?> future : futures)
+                    future.cancel(true);
+            }
+            VerificationIndex.getInstance().save();
+        }
+
+        if (!exceptions.isEmpty()) {
+            IOException exception = new IOException("Unable to download " + exceptions.size() + " of " + total + " asset objects", exceptions.peek());
+            for (Exception e : exceptions)
+                if (e != exception.getCause())
+                    exception.addSuppressed(e);
+            throw exception;
+        }
+    }
+
+    /**
+     * Reads the asset index and collects the objects that do not exist or are broken.
+     * Objects sharing the same hash are only downloaded once.
+     */
+    private List<AssetObject> findMissingObjects() throws IOException, InterruptedException {
+        GameRepository repository = dependencyManager.getGameRepository();
+        Set<String> visited = new HashSet<>();
+        List<AssetObject> missing = new ArrayList<>();
+        Map<Path, AssetObject> existing = new HashMap<>();
+
+        CompactAssetIndex index;
+        try {
+            index = CompactAssetIndex.load(assetIndexFile.toPath());
+        } catch (JsonParseException e) {
+            throw new IOException("Asset index file malformed", e);
+        }
+
+        for (int i = 0; i < index.size(); i++) {
             if (Thread.interrupted())
                 throw new InterruptedException();
 
-            File file = entry.getKey();
-            AssetObject assetObject = entry.getValue();
-            String url = dependencyManager.getDownloadProvider().getAssetBaseURL() + assetObject.getLocation();
-            if (!FileUtils.makeDirectory(file.getAbsoluteFile().getParentFile())) {
-                Logging.LOG.log(Level.SEVERE, "Unable to create new file " + file + ", because parent directory cannot be created");
+            AssetObject assetObject = index.getObject(i);
+            if (!visited.add(assetObject.getHash()))
                 continue;
+
+            File file = repository.getAssetObject(version.getId(), assetIndexInfo.getId(), assetObject);
+            if (file.isFile())
+                existing.put(file.toPath(), assetObject);
+            else
+                missing.add(assetObject);
+        }
+
+        Map<Path, String> hashes = new HashMap<>();
+        existing.forEach((file, assetObject) -> hashes.put(file, assetObject.getHash()));
+        for (Path file : VerificationIndex.getInstance().findInvalidFiles(hashes)) {
+            Logging.LOG.warning("Asset object " + file + " is broken, downloading it again");
+            missing.add(existing.get(file));
+        }
+        return missing;
+    }
+
+    /**
+     * Queues the attempt for the best ranked candidate except the host that failed last time,
+     * and submits a batch for the host unless enough batches have been submitted.
+     * The attempt is finished as failed if it cannot be queued.
+     */
+    private void enqueue(Attempt attempt) {
+        String host;
+        try {
+            List<URL> urls = dependencyManager.getDownloadProvider().getAssetObjectCandidates(attempt.assetObject.getLocation());
+            attempt.url = urls.stream()
+                    .filter(url -> !url.getHost().equals(attempt.failedHost))
+                    .findFirst().orElse(urls.get(0));
+            host = attempt.url.getHost();
+        } catch (RuntimeException e) {
+            complete(attempt, e);
+            return;
+        }
+        pending.computeIfAbsent(host, key -> new ConcurrentLinkedQueue<>()).add(attempt);
+        trySubmitBatch(host);
+    }
+
+    private void trySubmitBatch(String host) {
+        AtomicInteger count = batches.computeIfAbsent(host, key -> new AtomicInteger());
+        int max = Schedulers.getDownloadScheduler().getMaxConnectionsPerHost();
+        while (!stopped) {
+            int n = count.get();
+            if (n >= max)
+                return;
+            if (count.compareAndSet(n, n + 1)) {
+                try {
+                    futures.add(Schedulers.getDownloadScheduler().forHost(host, this).schedule(() -> runBatch(host)));
+                } catch (RuntimeException e) {
+                    // The attempts are left to the running batches of the host if any, otherwise they fail.
+                    if (count.decrementAndGet() == 0) {
+                        Attempt attempt;
+                        while ((attempt = pending.get(host).poll()) != null)
+                            complete(attempt, e);
+                    }
+                }
+                return;
             }
-            if (file.isDirectory() || file.isFile() && file.exists())
-                continue;
-            FileDownloadTask task = new FileDownloadTask(NetworkUtils.toURL(url), file, new IntegrityCheck("SHA-1", assetObject.getHash()));
-            task.setName(assetObject.getHash());
-            dependencies.add(task);
         }
     }
-    
+
+    /**
+     * Downloads at most {@link #BATCH_SIZE} objects from {@code host}, then gives the connection slot back
+     * and submits the next batch if objects of the host are left.
+     */
+    private void runBatch(String host) {
+        Queue<Attempt> queue = pending.get(host);
+        byte[] buffer = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
+        try {
+            for (int i = 0; i < BATCH_SIZE && !stopped; i++) {
+                Attempt attempt = queue.poll();
+                if (attempt == null)
+                    break;
+                if (Thread.currentThread().isInterrupted()) {
+                    stop();
+                    break;
+                }
+                process(attempt, buffer);
+            }
+        } finally {
+            // Released before checking the queue, so that an attempt queued meanwhile will not be left without a batch.
+            batches.get(host).decrementAndGet();
+        }
+        if (!queue.isEmpty())
+            trySubmitBatch(host);
+    }
+
+    /**
+     * Stops all batches, and wakes up the task thread, which will find objects left.
+     */
+    private void stop() {
+        stopped = true;
+        done.countDown();
+    }
+
+    private void process(Attempt attempt, byte[] buffer) {
+        AssetObject assetObject = attempt.assetObject;
+        Exception exception = null;
+        boolean handedOver = false;
+        try {
+            File file = dependencyManager.getGameRepository().getAssetObject(version.getId(), assetIndexInfo.getId(), assetObject);
+            download(assetObject, file, attempt.url, buffer);
+        } catch (IOException e) {
+            exception = e;
+            if (attempt.repeat + 1 < RETRY && !stopped) {
+                handedOver = true;
+                enqueue(new Attempt(assetObject, attempt.repeat + 1, attempt.url.getHost()));
+            }
+        } catch (InterruptedException e) {
+            // The task will find objects left.
+            handedOver = true;
+            stop();
+        } catch (RuntimeException e) {
+            exception = e;
+        } finally {
+            if (!handedOver)
+                complete(attempt, exception);
+        }
+    }
+
+    /**
+     * Counts the attempt as finished.
+     *
+     * @param exception the exception that the attempt fails with, null if succeeded.
+     */
+    private void complete(Attempt attempt, Exception exception) {
+        if (exception != null) {
+            Logging.LOG.log(Level.WARNING, "Unable to download asset object " + attempt.assetObject.getHash(), exception);
+            exceptions.add(exception);
+        }
+        finished.incrementAndGet();
+        if (remaining.decrementAndGet() == 0)
+            done.countDown();
+    }
+
+    private void download(AssetObject assetObject, File file, URL url, byte[] buffer) throws IOException, InterruptedException {
+        String hash = assetObject.getHash();
+        CacheRepository repository = CacheRepository.getInstance();
+        if (repository != null) {
+            Optional<Path> cache = repository.checkExistentFile(ALGORITHM, hash);
+            if (cache.isPresent()) {
+                try {
+                    repository.placeFile(cache.get(), file.toPath());
+                    VerificationIndex.getInstance().record(file.toPath(), hash);
+                    return;
+                } catch (IOException e) {
+                    Logging.LOG.log(Level.WARNING, "Unable to place cached file " + cache.get() + " to " + file, e);
+                }
+            }
+        }
+
+        if (!FileUtils.makeDirectory(file.getAbsoluteFile().getParentFile()))
+            throw new IOException("Could not make directory " + file.getAbsoluteFile().getParent());
+
+        File temp = new File(file.getAbsolutePath() + ".tmp");
+        long startTime = System.nanoTime();
+        try {
+            long size = downloadTo(url, temp, hash, buffer);
+            DownloadStatistics.INSTANCE.recordSuccess(url, size, System.nanoTime() - startTime);
+        } catch (IOException e) {
+            temp.delete();
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            DownloadStatistics.INSTANCE.recordFailure(url);
+            throw new IOException("Unable to download asset object " + hash + " from " + url, e);
+        }
+
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        VerificationIndex.getInstance().record(file.toPath(), hash);
+
+        if (repository != null) {
+            try {
+                repository.cacheFile(file.toPath(), ALGORITHM, hash);
+            } catch (IOException e) {
+                Logging.LOG.log(Level.WARNING, "Unable to cache file " + file, e);
+            }
+        }
+    }
+
+    /**
+     * @return the size of downloaded file.
+     */
+    private long downloadTo(URL url, File file, String hash, byte[] buffer) throws IOException {
+        HttpURLConnection con = NetworkUtils.createConnection(url);
+        try {
+            con.connect();
+            if (con.getResponseCode() / 100 != 2)
+                throw new IOException("Server error, response code: " + con.getResponseCode());
+
+            MessageDigest digest = getDigest(ALGORITHM);
+            long size = 0;
+            try (InputStream input = con.getInputStream(); OutputStream output = new FileOutputStream(file)) {
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    if (Thread.currentThread().isInterrupted())
+                        throw new IOException("Interrupted while downloading " + url);
+                    digest.update(buffer, 0, read);
+                    output.write(buffer, 0, read);
+                    size += read;
+                    downloadedBytes.addAndGet(read);
+                }
+            }
+
+            String actualHash = Hex.encodeHex(digest.digest());
+            if (!hash.equalsIgnoreCase(actualHash))
+                throw new ChecksumMismatchException(ALGORITHM, hash, actualHash);
+            return size;
+        } finally {
+            con.disconnect();
+        }
+    }
+
+    /**
+     * An attempt to download an asset object.
+     */
+    private static final class Attempt {
+        private final AssetObject assetObject;
+        private final int repeat;
+        private final String failedHost;
+        private URL url;
+
+        /**
+         * @param failedHost the host that the last attempt failed on, null if none.
+         */
+        Attempt(AssetObject assetObject, int repeat, String failedHost) {
+            this.assetObject = assetObject;
+            this.repeat = repeat;
+            this.failedHost = failedHost;
+        }
+    }
+
+    private static final String ALGORITHM = "SHA-1";
+    private static final int RETRY = 5;
+    private static final int BATCH_SIZE = 32;
 }
@@ -23,7 +23,6 @@ import org.jackhuang.hmcl.game.Version;
 import org.jackhuang.hmcl.task.FileDownloadTask;
 import org.jackhuang.hmcl.task.Task;
 import org.jackhuang.hmcl.util.FileUtils;
-import org.jackhuang.hmcl.util.NetworkUtils;
 
 import java.io.File;
 import java.io.IOException;
@@ -66,8 +65,9 @@ public final class GameAssetIndexDownloadTask extends Task {
             throw new IOException("Cannot create directory: " + assetDir);
         File assetIndexFile = dependencyManager.getGameRepository().getIndexFile(version.getId(), assetIndexInfo.getId());
         dependencies.add(new FileDownloadTask(
-                NetworkUtils.toURL(dependencyManager.getDownloadProvider().injectURL(assetIndexInfo.getUrl())),
-                assetIndexFile
+                dependencyManager.getDownloadProvider().injectURLWithCandidates(assetIndexInfo.getUrl()),
+                assetIndexFile,
+                null
         ));
     }
 
@@ -18,14 +18,12 @@
 package org.jackhuang.hmcl.download.game;
 
 import org.jackhuang.hmcl.download.AbstractDependencyManager;
-import org.jackhuang.hmcl.game.AssetIndex;
 import org.jackhuang.hmcl.game.AssetIndexInfo;
 import org.jackhuang.hmcl.game.AssetObject;
+import org.jackhuang.hmcl.game.CompactAssetIndex;
 import org.jackhuang.hmcl.game.Version;
 import org.jackhuang.hmcl.task.Task;
 import org.jackhuang.hmcl.task.TaskResult;
-import org.jackhuang.hmcl.util.Constants;
-import org.jackhuang.hmcl.util.FileUtils;
 import org.jackhuang.hmcl.util.Pair;
 
 import java.io.File;
@@ -76,17 +74,16 @@ public final class GameAssetRefreshTask extends TaskResult<Collection<Pair<File,
 
     @Override
     public void execute() throws Exception {
-        AssetIndex index = Constants.GSON.fromJson(FileUtils.readText(assetIndexFile), AssetIndex.class);
+        CompactAssetIndex index = CompactAssetIndex.load(assetIndexFile.toPath());
         List<Pair<File, AssetObject>> res = new LinkedList<>();
-        int progress = 0;
-        if (index != null)
-            for (AssetObject assetObject : index.getObjects().values()) {
-                if (Thread.interrupted())
-                    throw new InterruptedException();
+        for (int i = 0; i < index.size(); i++) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
 
+            AssetObject assetObject = index.getObject(i);
             res.add(pair(dependencyManager.getGameRepository().getAssetObject(version.getId(), assetIndexInfo.getId(), assetObject), assetObject));
-                updateProgress(++progress, index.getObjects().size());
-            }
+            updateProgress(i + 1, index.size());
+        }
         setResult(res);
     }
 
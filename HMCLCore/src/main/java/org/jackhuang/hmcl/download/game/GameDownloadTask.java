@@ -22,7 +22,6 @@ import org.jackhuang.hmcl.game.Version;
 import org.jackhuang.hmcl.task.FileDownloadTask;
 import org.jackhuang.hmcl.task.FileDownloadTask.IntegrityCheck;
 import org.jackhuang.hmcl.task.Task;
-import org.jackhuang.hmcl.util.NetworkUtils;
 
 import java.io.File;
 import java.util.LinkedList;
@@ -54,10 +53,10 @@ public final class GameDownloadTask extends Task {
         File jar = dependencyManager.getGameRepository().getVersionJar(version);
         
         dependencies.add(new FileDownloadTask(
-                NetworkUtils.toURL(dependencyManager.getDownloadProvider().injectURL(version.getDownloadInfo().getUrl())),
+                dependencyManager.getDownloadProvider().injectURLWithCandidates(version.getDownloadInfo().getUrl()),
                 jar,
                 new IntegrityCheck("SHA-1", version.getDownloadInfo().getSha1())
-        ));
+        ).setSegments(4));
     }
     
 }
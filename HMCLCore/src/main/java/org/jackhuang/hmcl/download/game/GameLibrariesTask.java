@@ -21,13 +21,18 @@ import org.jackhuang.hmcl.download.AbstractDependencyManager;
 import org.jackhuang.hmcl.game.Library;
 import org.jackhuang.hmcl.game.Version;
 import org.jackhuang.hmcl.task.Task;
+import org.jackhuang.hmcl.util.Logging;
+import org.jackhuang.hmcl.util.VerificationIndex;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
- * This task is to download game libraries.
+ * This task is to download game libraries that are missing or broken.
  * This task should be executed last(especially after game downloading, Forge, LiteLoader and OptiFine install task).
  *
  * @author huangyuhui
@@ -57,11 +62,22 @@ public final class GameLibrariesTask extends Task {
 
     @Override
     public void execute() {
+        Map<Path, Library> existing = new HashMap<>();
+        Map<Path, String> hashes = new HashMap<>();
         version.getLibraries().stream().filter(Library::appliesToCurrentEnvironment).forEach(library -> {
             File file = dependencyManager.getGameRepository().getLibraryFile(version, library);
             if (!file.exists())
                 dependencies.add(new LibraryDownloadTask(dependencyManager, file, library));
+            else if (library.getDownload().getSha1() != null) {
+                existing.put(file.toPath(), library);
+                hashes.put(file.toPath(), library.getDownload().getSha1());
+            }
         });
+
+        for (Path file : VerificationIndex.getInstance().findInvalidFiles(hashes)) {
+            Logging.LOG.warning("Library " + file + " is broken, downloading it again");
+            dependencies.add(new LibraryDownloadTask(dependencyManager, file.toFile(), existing.get(file)));
+        }
     }
 
 }
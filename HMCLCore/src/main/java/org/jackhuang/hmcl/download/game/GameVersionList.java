@@ -19,15 +19,17 @@ package org.jackhuang.hmcl.download.game;
 
 import org.jackhuang.hmcl.download.DownloadProvider;
 import org.jackhuang.hmcl.download.RemoteVersion;
+import org.jackhuang.hmcl.download.VersionIndex;
 import org.jackhuang.hmcl.download.VersionList;
-import org.jackhuang.hmcl.task.GetTask;
+import org.jackhuang.hmcl.task.GetJsonTask;
 import org.jackhuang.hmcl.task.Task;
-import org.jackhuang.hmcl.util.Constants;
 import org.jackhuang.hmcl.util.NetworkUtils;
 import org.jackhuang.hmcl.util.StringUtils;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 /**
  *
@@ -47,17 +49,18 @@ public final class GameVersionList extends VersionList<GameRemoteVersion> {
 
     @Override
     protected Collection<GameRemoteVersion> getVersionsImpl(String gameVersion) {
-        lock.readLock().lock();
-        try {
-            return StringUtils.isBlank(gameVersion) ? versions.values() : versions.get(gameVersion);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return StringUtils.isBlank(gameVersion) ? getIndex().getVersions() : getIndex().getVersions(gameVersion);
     }
 
     @Override
-    public Task refreshAsync(DownloadProvider downloadProvider) {
-        GetTask task = new GetTask(NetworkUtils.toURL(downloadProvider.getVersionListURL()));
+    protected List<GameRemoteVersion> getVersionsImpl(String gameVersion, Set<RemoteVersion.Type> types) {
+        return getIndex().getVersions(StringUtils.isBlank(gameVersion) ? null : gameVersion, types);
+    }
+
+    @Override
+    protected Task refreshAsync(DownloadProvider downloadProvider, boolean allowStale) {
+        GetJsonTask<GameRemoteVersions> task = new GetJsonTask<GameRemoteVersions>(NetworkUtils.toURL(downloadProvider.getVersionListURL()), GameRemoteVersions.class)
+                .setCacheable(true).setAllowStale(allowStale);
         return new Task() {
             @Override
             public Collection<Task> getDependents() {
@@ -66,23 +69,19 @@ public final class GameVersionList extends VersionList<GameRemoteVersion> {
 
             @Override
             public void execute() {
-                lock.writeLock().lock();
+                VersionIndex.Builder<GameRemoteVersion> builder = new VersionIndex.Builder<>();
 
-                try {
-                    versions.clear();
-
-                    GameRemoteVersions root = Constants.GSON.fromJson(task.getResult(), GameRemoteVersions.class);
-                    for (GameRemoteVersionInfo remoteVersion : root.getVersions()) {
-                        versions.put(remoteVersion.getGameVersion(), new GameRemoteVersion(
-                                remoteVersion.getGameVersion(),
-                                remoteVersion.getGameVersion(),
-                                remoteVersion.getUrl(),
-                                remoteVersion.getType(), remoteVersion.getReleaseTime())
-                        );
-                    }
-                } finally {
-                    lock.writeLock().unlock();
+                GameRemoteVersions root = task.getResult();
+                for (GameRemoteVersionInfo remoteVersion : root.getVersions()) {
+                    builder.add(remoteVersion.getGameVersion(), new GameRemoteVersion(
+                            remoteVersion.getGameVersion(),
+                            remoteVersion.getGameVersion(),
+                            remoteVersion.getUrl(),
+                            remoteVersion.getType(), remoteVersion.getReleaseTime())
+                    );
                 }
+
+                publish(builder.build());
             }
         };
     }
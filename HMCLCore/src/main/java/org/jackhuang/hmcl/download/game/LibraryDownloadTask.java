@@ -4,6 +4,7 @@ import org.jackhuang.hmcl.download.AbstractDependencyManager;
 import org.jackhuang.hmcl.game.Library;
 import org.jackhuang.hmcl.task.FileDownloadTask;
 import org.jackhuang.hmcl.task.FileDownloadTask.IntegrityCheck;
+import org.jackhuang.hmcl.task.SilentException;
 import org.jackhuang.hmcl.task.Task;
 import org.jackhuang.hmcl.util.FileUtils;
 import org.jackhuang.hmcl.util.IOUtils;
@@ -14,6 +15,7 @@ import org.tukaani.xz.XZInputStream;
 import java.io.*;
 import java.net.URL;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
@@ -21,6 +23,8 @@ import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Pack200;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
 
 import static org.jackhuang.hmcl.util.DigestUtils.digest;
 import static org.jackhuang.hmcl.util.Hex.encodeHex;
@@ -40,12 +44,12 @@ public final class LibraryDownloadTask extends Task {
 
         this.library = library;
 
-        String url = dependencyManager.getDownloadProvider().injectURL(library.getDownload().getUrl());
+        List<URL> urls = dependencyManager.getDownloadProvider().injectURLWithCandidates(library.getDownload().getUrl());
         jar = file;
 
         xzFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".pack.xz");
 
-        helperTask = new LibraryDownloadTaskHelper(file, url);
+        helperTask = new LibraryDownloadTaskHelper(file, urls);
     }
 
     @Override
@@ -62,7 +66,7 @@ public final class LibraryDownloadTask extends Task {
     public void execute() throws Exception {
         if (!isDependentsSucceeded()) {
             if (helperTask.task == null) {
-                // NetworkUtils.URLExists failed.
+                // LibraryDownloadTaskHelper failed before downloading the jar.
                 throw new LibraryDownloadException(library, helperTask.getLastException());
             } else {
                 // Since FileDownloadTask wraps the actual exception with another IOException.
@@ -74,7 +78,7 @@ public final class LibraryDownloadTask extends Task {
                     throw new LibraryDownloadException(library, t);
             }
         } else {
-            if (xz) unpackLibrary(jar, FileUtils.readBytes(xzFile));
+            if (xz) unpackLibrary(jar, xzFile);
             if (!checksumValid(jar, library.getChecksums())) {
                 jar.delete();
                 throw new IOException("Checksum failed for " + library);
@@ -82,18 +86,69 @@ public final class LibraryDownloadTask extends Task {
         }
     }
 
+    /**
+     * pack.xz is only published by the Forge maven, for the libraries listed with checksums in Forge version jsons,
+     * which are also the only ones that can be verified after unpacking.
+     */
+    private static boolean isPackXZAvailable(Library library) {
+        return library.getChecksums() != null && !library.getChecksums().isEmpty()
+                && library.getDownload().getUrl() != null
+                && FORGE_MAVEN.matcher(library.getDownload().getUrl()).lookingAt();
+    }
+
+    /**
+     * Downloads pack.xz, whose failure is expected and is not reported as the failure of the executor.
+     */
+    private static final class PackXZDownloadTask extends FileDownloadTask {
+        private volatile Exception exception;
+
+        PackXZDownloadTask(URL url, File file) {
+            super(url, file, null, 1);
+            setSignificance(TaskSignificance.MINOR);
+        }
+
+        @Override
+        public void execute() throws Exception {
+            try {
+                super.execute();
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                exception = e;
+                throw new SilentException();
+            }
+        }
+    }
+
     private class LibraryDownloadTaskHelper extends Task {
         private FileDownloadTask task;
+        private final PackXZDownloadTask xzTask;
         private final File file;
-        private final String url;
+        private final List<URL> urls;
 
-        public LibraryDownloadTaskHelper(File file, String url) {
+        public LibraryDownloadTaskHelper(File file, List<URL> urls) {
             this.file = file;
-            this.url = url;
+            this.urls = urls;
+
+            // Instead of probing the existence of pack.xz, we download it directly, and fall back to jar if it fails.
+            if (isPackXZAvailable(library))
+                xzTask = new PackXZDownloadTask(NetworkUtils.toURL(urls.get(0) + ".pack.xz"), xzFile);
+            else
+                xzTask = null;
 
             setName(library.getName());
         }
 
+        @Override
+        public Collection<? extends Task> getDependents() {
+            return xzTask == null ? Collections.emptySet() : Collections.singleton(xzTask);
+        }
+
+        @Override
+        public boolean isRelyingOnDependents() {
+            return false;
+        }
+
         @Override
         public boolean isRelyingOnDependencies() {
             return true;
@@ -101,21 +156,23 @@ public final class LibraryDownloadTask extends Task {
 
         @Override
         public Collection<? extends Task> getDependencies() {
-            return Collections.singleton(task);
+            return task == null ? Collections.emptySet() : Collections.singleton(task);
         }
 
         @Override
         public void execute() throws Exception {
-            URL packXz = NetworkUtils.toURL(url + ".pack.xz");
-            if (NetworkUtils.URLExists(packXz)) {
-                task = new FileDownloadTask(packXz, xzFile, null);
-                xz = true;
-            } else {
-                task = new FileDownloadTask(NetworkUtils.toURL(url),
-                        file,
-                        library.getDownload().getSha1() != null ? new IntegrityCheck("SHA-1", library.getDownload().getSha1()) : null);
-                xz = false;
+            if (xzTask != null) {
+                if (isDependentsSucceeded()) {
+                    xz = true;
+                    return;
+                }
+                Logging.LOG.log(Level.FINE, "Unable to download " + xzTask.getUrl() + ", downloading jar instead", xzTask.exception);
             }
+
+            task = new FileDownloadTask(urls,
+                    file,
+                    library.getDownload().getSha1() != null ? new IntegrityCheck("SHA-1", library.getDownload().getSha1()) : null);
+            xz = false;
         }
     }
 
@@ -124,10 +181,9 @@ public final class LibraryDownloadTask extends Task {
             if (checksums == null || checksums.isEmpty()) {
                 return true;
             }
-            byte[] fileData = FileUtils.readBytes(libPath);
-            boolean valid = checksums.contains(encodeHex(digest("SHA-1", fileData)));
+            boolean valid = checksums.contains(encodeHex(digest("SHA-1", libPath.toPath())));
             if (!valid && libPath.getName().endsWith(".jar")) {
-                valid = validateJar(fileData, checksums);
+                valid = validateJar(libPath, checksums);
             }
             return valid;
         } catch (IOException e) {
@@ -136,22 +192,22 @@ public final class LibraryDownloadTask extends Task {
         return false;
     }
 
-    private static boolean validateJar(byte[] data, List<String> checksums) throws IOException {
+    private static boolean validateJar(File file, List<String> checksums) throws IOException {
         HashMap<String, String> files = new HashMap<>();
         String[] hashes = null;
-        JarInputStream jar = new JarInputStream(new ByteArrayInputStream(data));
-        JarEntry entry = jar.getNextJarEntry();
-        while (entry != null) {
-            byte[] eData = IOUtils.readFullyWithoutClosing(jar);
-            if (entry.getName().equals("checksums.sha1")) {
-                hashes = new String(eData, Charset.forName("UTF-8")).split("\n");
-            }
-            if (!entry.isDirectory()) {
-                files.put(entry.getName(), encodeHex(digest("SHA-1", eData)));
+        try (JarInputStream jar = new JarInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            JarEntry entry = jar.getNextJarEntry();
+            while (entry != null) {
+                if (entry.getName().equals("checksums.sha1")) {
+                    byte[] eData = IOUtils.readFullyWithoutClosing(jar);
+                    hashes = new String(eData, Charset.forName("UTF-8")).split("\n");
+                    files.put(entry.getName(), encodeHex(digest("SHA-1", eData)));
+                } else if (!entry.isDirectory()) {
+                    files.put(entry.getName(), encodeHex(digest("SHA-1", jar)));
+                }
+                entry = jar.getNextJarEntry();
             }
-            entry = jar.getNextJarEntry();
         }
-        jar.close();
         if (hashes != null) {
             boolean failed = !checksums.contains(files.get("checksums.sha1"));
             if (!failed) {
@@ -178,38 +234,64 @@ public final class LibraryDownloadTask extends Task {
         return false;
     }
 
-    private static void unpackLibrary(File dest, byte[] src) throws IOException {
+    /**
+     * Unpacks {@code src}, which is a Pack200 archive compressed by XZ, followed by
+     * the content of checksums.sha1, its length in 4 bytes (little-endian) and "SIGN".
+     *
+     * The archive is decompressed to a temporary file, so that the trailer can be read
+     * without holding the whole archive in memory.
+     */
+    private static void unpackLibrary(File dest, File src) throws IOException {
         if (dest.exists())
             if (!dest.delete())
                 throw new IOException("Unable to delete file " + dest);
 
-        byte[] decompressed = IOUtils.readFullyAsByteArray(new XZInputStream(new ByteArrayInputStream(src)));
+        File temp = FileUtils.createTempFile("minecraft", ".pack");
+        try {
+            try (InputStream input = new XZInputStream(new BufferedInputStream(new FileInputStream(src)));
+                 OutputStream output = new FileOutputStream(temp)) {
+                IOUtils.copyTo(input, output);
+            }
+
+            byte[] checksums;
+            try (RandomAccessFile file = new RandomAccessFile(temp, "rw")) {
+                long x = file.length();
+                if (x < 8)
+                    throw new IOException("Unpacking failed, file is too short");
 
-        String end = new String(decompressed, decompressed.length - 4, 4);
-        if (!end.equals("SIGN"))
-            throw new IOException("Unpacking failed, signature missing " + end);
+                byte[] trailer = new byte[8];
+                file.seek(x - 8);
+                file.readFully(trailer);
 
-        int x = decompressed.length;
-        int len = decompressed[(x - 8)] & 0xFF | (decompressed[(x - 7)] & 0xFF) << 8 | (decompressed[(x - 6)] & 0xFF) << 16 | (decompressed[(x - 5)] & 0xFF) << 24;
+                String end = new String(trailer, 4, 4, StandardCharsets.US_ASCII);
+                if (!end.equals("SIGN"))
+                    throw new IOException("Unpacking failed, signature missing " + end);
 
-        File temp = FileUtils.createTempFile("minecraft", ".pack");
+                long len = trailer[0] & 0xFF | (trailer[1] & 0xFF) << 8 | (trailer[2] & 0xFF) << 16 | (trailer[3] & 0xFFL) << 24;
+                if (len > x - 8)
+                    throw new IOException("Unpacking failed, invalid checksums length " + len);
 
-        byte[] checksums = Arrays.copyOfRange(decompressed, decompressed.length - len - 8, decompressed.length - 8);
+                checksums = new byte[(int) len];
+                file.seek(x - len - 8);
+                file.readFully(checksums);
 
-        OutputStream out = new FileOutputStream(temp);
-        out.write(decompressed, 0, decompressed.length - len - 8);
-        out.close();
+                // Leave the Pack200 archive only.
+                file.setLength(x - len - 8);
+            }
 
-        try (FileOutputStream jarBytes = new FileOutputStream(dest); JarOutputStream jos = new JarOutputStream(jarBytes)) {
-            Pack200.newUnpacker().unpack(temp, jos);
+            try (FileOutputStream jarBytes = new FileOutputStream(dest); JarOutputStream jos = new JarOutputStream(jarBytes)) {
+                Pack200.newUnpacker().unpack(temp, jos);
 
-            JarEntry checksumsFile = new JarEntry("checksums.sha1");
-            checksumsFile.setTime(0L);
-            jos.putNextEntry(checksumsFile);
-            jos.write(checksums);
-            jos.closeEntry();
+                JarEntry checksumsFile = new JarEntry("checksums.sha1");
+                checksumsFile.setTime(0L);
+                jos.putNextEntry(checksumsFile);
+                jos.write(checksums);
+                jos.closeEntry();
+            }
+        } finally {
+            temp.delete();
         }
-
-        temp.delete();
     }
+
+    private static final Pattern FORGE_MAVEN = Pattern.compile("https?://files\\.minecraftforge\\.net/maven/");
 }
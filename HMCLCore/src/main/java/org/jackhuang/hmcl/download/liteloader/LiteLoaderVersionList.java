@@ -18,10 +18,10 @@
 package org.jackhuang.hmcl.download.liteloader;
 
 import org.jackhuang.hmcl.download.DownloadProvider;
+import org.jackhuang.hmcl.download.VersionIndex;
 import org.jackhuang.hmcl.download.VersionList;
-import org.jackhuang.hmcl.task.GetTask;
+import org.jackhuang.hmcl.task.GetJsonTask;
 import org.jackhuang.hmcl.task.Task;
-import org.jackhuang.hmcl.util.Constants;
 import org.jackhuang.hmcl.util.NetworkUtils;
 import org.jackhuang.hmcl.util.VersionNumber;
 import org.w3c.dom.Document;
@@ -52,34 +52,32 @@ public final class LiteLoaderVersionList extends VersionList<LiteLoaderRemoteVer
     }
 
     @Override
-    public Task refreshAsync(DownloadProvider downloadProvider) {
-        GetTask task = new GetTask(NetworkUtils.toURL(downloadProvider.injectURL(LITELOADER_LIST)));
+    protected Task refreshAsync(DownloadProvider downloadProvider, boolean allowStale) {
+        GetJsonTask<LiteLoaderVersionsRoot> task = new GetJsonTask<LiteLoaderVersionsRoot>(NetworkUtils.toURL(downloadProvider.injectURL(LITELOADER_LIST)), LiteLoaderVersionsRoot.class)
+                .setCacheable(true).setAllowStale(allowStale);
         return new Task() {
             @Override
             public Collection<Task> getDependents() {
                 return Collections.singleton(task);
             }
 
+            private final VersionIndex.Builder<LiteLoaderRemoteVersion> builder = new VersionIndex.Builder<>();
+
             @Override
             public void execute() {
-                lock.writeLock().lock();
-
-                try {
-                    LiteLoaderVersionsRoot root = Constants.GSON.fromJson(task.getResult(), LiteLoaderVersionsRoot.class);
-                    versions.clear();
-
-                    for (Map.Entry<String, LiteLoaderGameVersions> entry : root.getVersions().entrySet()) {
-                        String gameVersion = entry.getKey();
-                        LiteLoaderGameVersions liteLoader = entry.getValue();
-                        Optional<String> gg = VersionNumber.parseVersion(gameVersion);
-                        if (!gg.isPresent())
-                            continue;
-                        doBranch(gg.get(), gameVersion, liteLoader.getRepoitory(), liteLoader.getArtifacts(), false);
-                        doBranch(gg.get(), gameVersion, liteLoader.getRepoitory(), liteLoader.getSnapshots(), true);
-                    }
-                } finally {
-                    lock.writeLock().unlock();
+                LiteLoaderVersionsRoot root = task.getResult();
+
+                for (Map.Entry<String, LiteLoaderGameVersions> entry : root.getVersions().entrySet()) {
+                    String gameVersion = entry.getKey();
+                    LiteLoaderGameVersions liteLoader = entry.getValue();
+                    Optional<String> gg = VersionNumber.parseVersion(gameVersion);
+                    if (!gg.isPresent())
+                        continue;
+                    doBranch(gg.get(), gameVersion, liteLoader.getRepoitory(), liteLoader.getArtifacts(), false);
+                    doBranch(gg.get(), gameVersion, liteLoader.getRepoitory(), liteLoader.getSnapshots(), true);
                 }
+
+                publish(builder.build());
             }
 
             private void doBranch(String key, String gameVersion, LiteLoaderRepository repository, LiteLoaderBranch branch, boolean snapshot) {
@@ -102,7 +100,7 @@ public final class LiteLoaderVersionList extends VersionList<LiteLoaderRemoteVer
                         }
                     }
 
-                    versions.put(key, new LiteLoaderRemoteVersion(gameVersion,
+                    builder.add(key, new LiteLoaderRemoteVersion(gameVersion,
                             version, downloadProvider.injectURL(url),
                             v.getTweakClass(), v.getLibraries()
                     ));
@@ -19,10 +19,10 @@ package org.jackhuang.hmcl.download.optifine;
 
 import com.google.gson.reflect.TypeToken;
 import org.jackhuang.hmcl.download.DownloadProvider;
+import org.jackhuang.hmcl.download.VersionIndex;
 import org.jackhuang.hmcl.download.VersionList;
-import org.jackhuang.hmcl.task.GetTask;
+import org.jackhuang.hmcl.task.GetJsonTask;
 import org.jackhuang.hmcl.task.Task;
-import org.jackhuang.hmcl.util.Constants;
 import org.jackhuang.hmcl.util.NetworkUtils;
 import org.jackhuang.hmcl.util.StringUtils;
 import org.jackhuang.hmcl.util.VersionNumber;
@@ -46,8 +46,9 @@ public final class OptiFineBMCLVersionList extends VersionList<OptiFineRemoteVer
     }
 
     @Override
-    public Task refreshAsync(DownloadProvider downloadProvider) {
-        GetTask task = new GetTask(NetworkUtils.toURL("http://bmclapi2.bangbang93.com/optifine/versionlist"));
+    protected Task refreshAsync(DownloadProvider downloadProvider, boolean allowStale) {
+        GetJsonTask<List<OptiFineVersion>> task = new GetJsonTask<List<OptiFineVersion>>(NetworkUtils.toURL("http://bmclapi2.bangbang93.com/optifine/versionlist"), new TypeToken<List<OptiFineVersion>>() {
+        }.getType()).setCacheable(true).setAllowStale(allowStale);
         return new Task() {
             @Override
             public Collection<Task> getDependents() {
@@ -56,10 +57,9 @@ public final class OptiFineBMCLVersionList extends VersionList<OptiFineRemoteVer
 
             @Override
             public void execute() {
-                versions.clear();
+                VersionIndex.Builder<OptiFineRemoteVersion> builder = new VersionIndex.Builder<>();
                 Set<String> duplicates = new HashSet<>();
-                List<OptiFineVersion> root = Constants.GSON.fromJson(task.getResult(), new TypeToken<List<OptiFineVersion>>() {
-                }.getType());
+                List<OptiFineVersion> root = task.getResult();
                 for (OptiFineVersion element : root) {
                     String version = element.getType() + "_" + element.getPatch();
                     String mirror = "http://bmclapi2.bangbang93.com/optifine/" + element.getGameVersion() + "/" + element.getType() + "/" + element.getPatch();
@@ -71,8 +71,10 @@ public final class OptiFineBMCLVersionList extends VersionList<OptiFineRemoteVer
                     if (StringUtils.isBlank(element.getGameVersion()))
                         continue;
                     VersionNumber.parseVersion(element.getGameVersion())
-                            .ifPresent(gameVersion -> versions.put(gameVersion, new OptiFineRemoteVersion(gameVersion, version, () -> mirror, isPre)));
+                            .ifPresent(gameVersion -> builder.add(gameVersion, new OptiFineRemoteVersion(gameVersion, version, () -> mirror, isPre)));
                 }
+
+                publish(builder.build());
             }
         };
     }
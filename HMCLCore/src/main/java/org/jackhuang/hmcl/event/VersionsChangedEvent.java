@@ -0,0 +1,78 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.event;
+
+import org.jackhuang.hmcl.util.ToStringBuilder;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * This event gets fired when some versions in .minecraft folder are reloaded
+ * because their json files are changed, without refreshing all the versions.
+ * <br>
+ * This event is fired on the {@link org.jackhuang.hmcl.event.EventBus#EVENT_BUS}
+ *
+ * @author huangyuhui
+ */
+public final class VersionsChangedEvent extends Event {
+
+    private final Set<String> added;
+    private final Set<String> removed;
+    private final Set<String> changed;
+
+    /**
+     *
+     * @param source {@link org.jackhuang.hmcl.game.GameRepository}
+     * @param added the ids of versions that are newly loaded.
+     * @param removed the ids of versions that are no longer available.
+     * @param changed the ids of versions that are reloaded, including versions inheriting from a changed one.
+     */
+    public VersionsChangedEvent(Object source, Set<String> added, Set<String> removed, Set<String> changed) {
+        super(source);
+        this.added = Collections.unmodifiableSet(added);
+        this.removed = Collections.unmodifiableSet(removed);
+        this.changed = Collections.unmodifiableSet(changed);
+    }
+
+    public Set<String> getAdded() {
+        return added;
+    }
+
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    public Set<String> getChanged() {
+        return changed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return new ToStringBuilder(this)
+                .append("source", source)
+                .append("added", added)
+                .append("removed", removed)
+                .append("changed", changed)
+                .toString();
+    }
+}
@@ -62,6 +62,16 @@ public final class Arguments {
         return new Arguments(game, jvm);
     }
 
+    // The fields as they are, for VersionCodec.
+
+    List<Argument> rawGame() {
+        return game;
+    }
+
+    List<Argument> rawJvm() {
+        return jvm;
+    }
+
     public Arguments addGameArguments(String... gameArguments) {
         return addGameArguments(Arrays.asList(gameArguments));
     }
@@ -0,0 +1,220 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.game;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.jackhuang.hmcl.util.Hex;
+import org.jackhuang.hmcl.util.Immutable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * A read-only asset index that takes much less memory than {@link AssetIndex}.
+ *
+ * Objects are sorted by name, and their SHA-1 and sizes are stored in packed arrays
+ * instead of {@link AssetObject}s holding hex strings.
+ * Parsed indexes are shared by {@link #load(Path)} until their files are modified.
+ *
+ * @author huangyuhui
+ */
+@Immutable
+public final class CompactAssetIndex {
+
+    private final boolean virtual;
+    private final String[] names;
+    private final byte[] hashes;
+    private final long[] sizes;
+
+    private CompactAssetIndex(boolean virtual, String[] names, byte[] hashes, long[] sizes) {
+        this.virtual = virtual;
+        this.names = names;
+        this.hashes = hashes;
+        this.sizes = sizes;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @return the number of objects.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    public String getHash(int index) {
+        return Hex.encodeHex(Arrays.copyOfRange(hashes, index * HASH_LENGTH, (index + 1) * HASH_LENGTH));
+    }
+
+    public long getSize(int index) {
+        return sizes[index];
+    }
+
+    public AssetObject getObject(int index) {
+        return new AssetObject(getHash(index), sizes[index]);
+    }
+
+    /**
+     * @param name the asset object name, such as "icons/minecraft.icns".
+     * @return the object, empty if absent.
+     */
+    public Optional<AssetObject> getObject(String name) {
+        int index = Arrays.binarySearch(names, name);
+        return index < 0 ? Optional.empty() : Optional.of(getObject(index));
+    }
+
+    public AssetIndex toAssetIndex() {
+        Map<String, AssetObject> objects = new HashMap<>(names.length * 4 / 3 + 1);
+        for (int i = 0; i < names.length; i++)
+            objects.put(names[i], getObject(i));
+        return new AssetIndex(virtual, objects);
+    }
+
+    /**
+     * Streams the asset index file without building a tree of the json.
+     */
+    public static CompactAssetIndex read(Path file) throws IOException, JsonParseException {
+        boolean virtual = false;
+        List<String> names = new ArrayList<>();
+        byte[] hashes = new byte[HASH_LENGTH * 1024];
+        long[] sizes = new long[1024];
+
+        try (JsonReader reader = new JsonReader(Files.newBufferedReader(file, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                if ("virtual".equals(key) && reader.peek() == JsonToken.BOOLEAN) {
+                    virtual = reader.nextBoolean();
+                } else if ("objects".equals(key)) {
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        int index = names.size();
+                        if (index == sizes.length) {
+                            sizes = Arrays.copyOf(sizes, index * 2);
+                            hashes = Arrays.copyOf(hashes, index * 2 * HASH_LENGTH);
+                        }
+                        names.add(reader.nextName());
+
+                        String hash = null;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String property = reader.nextName();
+                            if ("hash".equals(property))
+                                hash = reader.nextString();
+                            else if ("size".equals(property))
+                                sizes[index] = reader.nextLong();
+                            else
+                                reader.skipValue();
+                        }
+                        reader.endObject();
+
+                        if (hash == null || hash.length() != HASH_LENGTH * 2)
+                            throw new JsonParseException("Malformed hash of asset object " + names.get(index) + ": " + hash);
+                        decodeHash(hash, hashes, index * HASH_LENGTH);
+                    }
+                    reader.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new JsonParseException("Asset index file " + file + " malformed", e);
+        }
+
+        // Sort objects by name for binary search.
+        Integer[] order = new Integer[names.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, Comparator.comparing(names::get));
+
+        String[] sortedNames = new String[order.length];
+        byte[] sortedHashes = new byte[order.length * HASH_LENGTH];
+        long[] sortedSizes = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedNames[i] = names.get(order[i]);
+            System.arraycopy(hashes, order[i] * HASH_LENGTH, sortedHashes, i * HASH_LENGTH, HASH_LENGTH);
+            sortedSizes[i] = sizes[order[i]];
+        }
+        return new CompactAssetIndex(virtual, sortedNames, sortedHashes, sortedSizes);
+    }
+
+    private static void decodeHash(String hash, byte[] out, int offset) {
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            int high = Character.digit(hash.charAt(i * 2), 16), low = Character.digit(hash.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0)
+                throw new JsonParseException("Illegal hash " + hash);
+            out[offset + i] = (byte) (high << 4 | low);
+        }
+    }
+
+    private static final int HASH_LENGTH = 20;
+
+    private static final int MAX_CACHED_INDEXES = 4;
+
+    private static final class CacheEntry {
+        private final long size;
+        private final long lastModified;
+        private final CompactAssetIndex index;
+
+        CacheEntry(long size, long lastModified, CompactAssetIndex index) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.index = index;
+        }
+    }
+
+    private static final Map<Path, CacheEntry> CACHE = new LinkedHashMap<Path, CacheEntry>(MAX_CACHED_INDEXES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, CacheEntry> eldest) {
+            return size() > MAX_CACHED_INDEXES;
+        }
+    };
+
+    /**
+     * Reads the asset index file, or returns the index read last time if the file is unchanged.
+     * Only a few recently used indexes are kept.
+     */
+    public static CompactAssetIndex load(Path file) throws IOException, JsonParseException {
+        Path key = file.toAbsolutePath();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        synchronized (CACHE) {
+            CacheEntry entry = CACHE.get(key);
+            if (entry != null && entry.size == attributes.size() && entry.lastModified == attributes.lastModifiedTime().toMillis())
+                return entry.index;
+        }
+
+        CompactAssetIndex index = read(key);
+        synchronized (CACHE) {
+            CACHE.put(key, new CacheEntry(attributes.size(), attributes.lastModifiedTime().toMillis(), index));
+        }
+        return index;
+    }
+}
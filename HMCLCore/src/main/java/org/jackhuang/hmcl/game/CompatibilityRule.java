@@ -46,6 +46,20 @@ public final class CompatibilityRule {
         this.features = features;
     }
 
+    // The fields as they are, for VersionCodec.
+
+    Action rawAction() {
+        return action;
+    }
+
+    OSRestriction rawOs() {
+        return os;
+    }
+
+    Map<String, Boolean> rawFeatures() {
+        return features;
+    }
+
     public Optional<Action> getAppliedAction(Map<String, Boolean> supportedFeatures) {
         if (os != null && !os.allow())
             return Optional.empty();
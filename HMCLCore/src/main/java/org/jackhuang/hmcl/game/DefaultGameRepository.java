@@ -22,15 +22,27 @@ import com.google.gson.JsonSyntaxException;
 import org.jackhuang.hmcl.event.*;
 import org.jackhuang.hmcl.task.Schedulers;
 import org.jackhuang.hmcl.util.Constants;
+import org.jackhuang.hmcl.util.DigestUtils;
 import org.jackhuang.hmcl.util.FileUtils;
+import org.jackhuang.hmcl.util.Hex;
+import org.jackhuang.hmcl.util.JsonUtils;
 import org.jackhuang.hmcl.util.Logging;
+import org.jackhuang.hmcl.util.Pair;
 import org.jackhuang.hmcl.util.ToStringBuilder;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
-import java.util.stream.Stream;
+import java.util.stream.IntStream;
 
 /**
  * An implementation of classic Minecraft game repository.
@@ -40,8 +52,18 @@ import java.util.stream.Stream;
 public class DefaultGameRepository implements GameRepository {
 
     private File baseDirectory;
-    protected Map<String, Version> versions;
-    protected boolean loaded = false;
+    protected volatile Map<String, Version> versions;
+    protected volatile boolean loaded = false;
+    /**
+     * Serializes loading versions, instead of the monitor of the repository,
+     * so that event handlers fired while loading can call back into the repository from any thread.
+     */
+    protected final Object refreshLock = new Object();
+    // Guarded by refreshLock
+    private SimpleVersionProvider provider;
+    private final Map<String, Pair<Version, Version>> resolvedVersions = new ConcurrentHashMap<>();
+    private final AtomicInteger resolvedGeneration = new AtomicInteger();
+    private VersionsWatcher watcher;
 
     public DefaultGameRepository(File baseDirectory) {
         this.baseDirectory = baseDirectory;
@@ -51,8 +73,10 @@ public class DefaultGameRepository implements GameRepository {
         return baseDirectory;
     }
 
-    public void setBaseDirectory(File baseDirectory) {
+    public synchronized void setBaseDirectory(File baseDirectory) {
         this.baseDirectory = baseDirectory;
+        if (watcher != null)
+            startWatching();
     }
 
     @Override
@@ -67,6 +91,34 @@ public class DefaultGameRepository implements GameRepository {
         return versions.get(id);
     }
 
+    @Override
+    public Version getResolvedVersion(String id) throws VersionNotFoundException {
+        Version version = getVersion(id);
+        Pair<Version, Version> cached = resolvedVersions.get(id);
+        if (cached != null && cached.getKey() == version)
+            return cached.getValue();
+
+        int generation = resolvedGeneration.get();
+        Version resolved = version.resolve(this);
+        resolvedVersions.put(id, new Pair<>(version, resolved));
+        // An ancestor may have changed while resolving.
+        if (resolvedGeneration.get() != generation)
+            resolvedVersions.remove(id);
+        return resolved;
+    }
+
+    /**
+     * Drops the cached resolved versions of {@code ids}, or all of them if {@code ids} is null.
+     * Versions inheriting from the given versions must be included.
+     */
+    protected void invalidateResolvedVersions(Collection<String> ids) {
+        resolvedGeneration.incrementAndGet();
+        if (ids == null)
+            resolvedVersions.clear();
+        else
+            resolvedVersions.keySet().removeAll(ids);
+    }
+
     @Override
     public int getVersionCount() {
         return versions.size();
@@ -89,7 +141,13 @@ public class DefaultGameRepository implements GameRepository {
 
     @Override
     public File getVersionJar(Version version) {
-        Version v = version.resolve(this);
+        Version v;
+        if (version.isResolved())
+            v = version;
+        else if (versions != null && versions.get(version.getId()) == version)
+            v = getResolvedVersion(version.getId());
+        else
+            v = version.resolve(this);
         String id = Optional.ofNullable(v.getJar()).orElse(v.getId());
         return new File(getVersionRoot(id), id + ".jar");
     }
@@ -113,7 +171,18 @@ public class DefaultGameRepository implements GameRepository {
     }
 
     public Version readVersionJson(File file) throws IOException, JsonSyntaxException {
-        return Constants.GSON.fromJson(FileUtils.readText(file), Version.class);
+        return JsonUtils.fromJsonFile(file, Version.class);
+    }
+
+    /**
+     * Reads the version json from {@link VersionCache} if possible.
+     */
+    private Version readCachedVersionJson(File file) throws IOException, JsonParseException {
+        VersionCache cache = VersionCache.getInstance();
+        if (cache == null)
+            return readVersionJson(file);
+        else
+            return cache.read(file.toPath());
     }
 
     @Override
@@ -141,6 +210,7 @@ public class DefaultGameRepository implements GameRepository {
             }
 
             FileUtils.writeText(toJson, Constants.GSON.toJson(fromVersion.setId(to)));
+            invalidateResolvedVersions(null);
             return true;
         } catch (IOException | JsonParseException | VersionNotFoundException e) {
             return false;
@@ -161,6 +231,11 @@ public class DefaultGameRepository implements GameRepository {
             return false;
 
         versions.remove(id);
+        invalidateResolvedVersions(null);
+        synchronized (refreshLock) {
+            if (provider != null)
+                provider.getVersionMap().remove(id);
+        }
 
         if (FileUtils.isMovingToTrashSupported()) {
             return FileUtils.moveToTrash(removedFile);
@@ -181,8 +256,89 @@ public class DefaultGameRepository implements GameRepository {
         return true;
     }
 
+    /**
+     * Reads the json of version {@code id} in {@code dir}.
+     *
+     * @param repair true if a misnamed json file or a wrong version id should be corrected,
+     *               and the user should be asked to fix a malformed json file.
+     * @return the unresolved version, null if the version is not available.
+     */
+    protected Version loadVersion(File dir, boolean repair) {
+        String id = dir.getName();
+        File json = new File(dir, id + ".json");
+
+        // If user renamed the json file by mistake or created the json file in a wrong name,
+        // we will find the only json and rename it to correct name.
+        if (repair && !json.exists()) {
+            List<File> jsons = FileUtils.listFilesByExtension(dir, "json");
+            if (jsons.size() == 1)
+                if (!jsons.get(0).renameTo(json)) {
+                    Logging.LOG.warning("Cannot rename json file " + jsons.get(0) + " to " + json + ", ignoring version " + id);
+                    return null;
+                }
+        }
+
+        if (!repair && !json.isFile())
+            return null;
+
+        Version version;
+        try {
+            version = Objects.requireNonNull(readCachedVersionJson(json));
+        } catch (Exception e) {
+            // JsonSyntaxException or IOException or NullPointerException(!!)
+            if (!repair || EventBus.EVENT_BUS.fireEvent(new GameJsonParseFailedEvent(this, json, id)) != Event.Result.ALLOW)
+                return null;
+
+            try {
+                version = Objects.requireNonNull(readCachedVersionJson(json));
+            } catch (Exception e2) {
+                Logging.LOG.log(Level.SEVERE, "User corrected version json is still malformed");
+                return null;
+            }
+        }
+
+        if (!id.equals(version.getId())) {
+            version = version.setId(id);
+            if (repair) {
+                try {
+                    FileUtils.writeText(json, Constants.GSON.toJson(version));
+                } catch (Exception e) {
+                    Logging.LOG.log(Level.WARNING, "Ignoring version " + id + " because wrong id " + version.getId() + " is set and cannot correct it.");
+                    return null;
+                }
+            }
+        }
+
+        return version;
+    }
+
+    /**
+     * @return the resolved version if the version is accepted, null otherwise.
+     */
+    private Version loadResolvedVersion(Version version, VersionProvider provider) {
+        try {
+            Version resolved = version.resolve(provider);
+
+            if (resolved.appliesToCurrentEnvironment() &&
+                    EventBus.EVENT_BUS.fireEvent(new LoadedOneVersionEvent(this, resolved)) != Event.Result.DENY)
+                return resolved;
+            else
+                return null;
+        } catch (VersionNotFoundException e) {
+            Logging.LOG.log(Level.WARNING, "Ignoring version " + version.getId() + " because it inherits from a nonexistent version.");
+            return null;
+        }
+    }
+
     protected void refreshVersionsImpl() {
-        Map<String, Version> versions = new TreeMap<>();
+        synchronized (refreshLock) {
+            refreshAllVersions();
+        }
+    }
+
+    private void refreshAllVersions() {
+        long startTime = System.currentTimeMillis();
+        Map<String, Version> versions = new ConcurrentSkipListMap<>();
 
         if (ClassicVersion.hasClassicVersion(getBaseDirectory())) {
             Version version = new ClassicVersion();
@@ -193,64 +349,136 @@ public class DefaultGameRepository implements GameRepository {
 
         File[] files = new File(getBaseDirectory(), "versions").listFiles();
         if (files != null)
-            Arrays.stream(files).parallel().filter(File::isDirectory).flatMap(dir -> {
-                String id = dir.getName();
-                File json = new File(dir, id + ".json");
-
-                // If user renamed the json file by mistake or created the json file in a wrong name,
-                // we will find the only json and rename it to correct name.
-                if (!json.exists()) {
-                    List<File> jsons = FileUtils.listFilesByExtension(dir, "json");
-                    if (jsons.size() == 1)
-                        if (!jsons.get(0).renameTo(json)) {
-                            Logging.LOG.warning("Cannot rename json file " + jsons.get(0) + " to " + json + ", ignoring version " + id);
-                            return Stream.empty();
-                        }
-                }
+            Arrays.stream(files).parallel().filter(File::isDirectory)
+                    .map(dir -> loadVersion(dir, true))
+                    .filter(Objects::nonNull)
+                    .forEachOrdered(provider::addVersion);
 
-                Version version;
-                try {
-                    version = Objects.requireNonNull(readVersionJson(json));
-                } catch (Exception e) {
-                    // JsonSyntaxException or IOException or NullPointerException(!!)
-                    if (EventBus.EVENT_BUS.fireEvent(new GameJsonParseFailedEvent(this, json, id)) != Event.Result.ALLOW)
-                        return Stream.empty();
-
-                    try {
-                        version = Objects.requireNonNull(readVersionJson(json));
-                    } catch (Exception e2) {
-                        Logging.LOG.log(Level.SEVERE, "User corrected version json is still malformed");
-                        return Stream.empty();
-                    }
-                }
+        invalidateResolvedVersions(null);
+        for (Version version : provider.getVersionMap().values()) {
+            Version resolved = loadResolvedVersion(version, provider);
+            if (resolved != null) {
+                versions.put(version.getId(), version);
+                resolvedVersions.put(version.getId(), new Pair<>(version, resolved));
+            }
+        }
 
-                if (!id.equals(version.getId())) {
-                    version = version.setId(id);
-                    try {
-                        FileUtils.writeText(json, Constants.GSON.toJson(version));
-                    } catch (Exception e) {
-                        Logging.LOG.log(Level.WARNING, "Ignoring version " + id + " because wrong id " + version.getId() + " is set and cannot correct it.");
-                        return Stream.empty();
-                    }
-                }
+        this.provider = provider;
+        this.versions = versions;
+        loaded = true;
 
-                return Stream.of(version);
-            }).forEachOrdered(provider::addVersion);
+        if (VersionCache.getInstance() != null)
+            VersionCache.getInstance().save();
+        Logging.LOG.info("Loaded " + versions.size() + " versions of " + getBaseDirectory() + " in " + (System.currentTimeMillis() - startTime) + "ms");
+    }
+
+    /**
+     * Reloads the given versions only, together with the versions inheriting from them,
+     * and updates the loaded versions in place.
+     *
+     * Malformed json files are not reported to the user, since they may be being written,
+     * and the version loaded last time is kept instead.
+     *
+     * @param ids the ids of versions whose directories or json files may have been changed.
+     * @return the versions added, removed or changed, null if versions have not been loaded yet.
+     */
+    protected VersionsChangedEvent refreshVersionsImpl(Collection<String> ids) {
+        synchronized (refreshLock) {
+            return refreshChangedVersions(ids);
+        }
+    }
 
-        for (Version version : provider.getVersionMap().values()) {
-            try {
-                Version resolved = version.resolve(provider);
+    private VersionsChangedEvent refreshChangedVersions(Collection<String> ids) {
+        if (!loaded || provider == null)
+            return null;
 
-                if (resolved.appliesToCurrentEnvironment() &&
-                        EventBus.EVENT_BUS.fireEvent(new LoadedOneVersionEvent(this, resolved)) != Event.Result.DENY)
-                    versions.put(version.getId(), version);
-            } catch (VersionNotFoundException e) {
-                Logging.LOG.log(Level.WARNING, "Ignoring version " + version.getId() + " because it inherits from a nonexistent version.");
+        Map<String, Version> parsed = provider.getVersionMap();
+        for (String id : ids) {
+            File dir = getVersionRoot(id);
+            if (!new File(dir, id + ".json").isFile()) {
+                parsed.remove(id);
+                continue;
             }
+            Version version = loadVersion(dir, false);
+            if (version != null)
+                parsed.put(id, version);
         }
 
-        this.versions = versions;
-        loaded = true;
+        // The versions inheriting from a changed version should be resolved again.
+        Set<String> affected = new HashSet<>(ids);
+        Set<String> candidates = new HashSet<>(parsed.keySet());
+        candidates.addAll(versions.keySet());
+        for (String id : candidates) {
+            Set<String> visited = new HashSet<>();
+            for (Version version = parsed.get(id); version != null && visited.add(version.getId()); version = parsed.get(version.getInheritsFrom())) {
+                if (ids.contains(version.getId()) || ids.contains(version.getInheritsFrom())) {
+                    affected.add(id);
+                    break;
+                }
+                if (version.getInheritsFrom() == null)
+                    break;
+            }
+        }
+
+        invalidateResolvedVersions(affected);
+        Set<String> added = new TreeSet<>(), removed = new TreeSet<>(), changed = new TreeSet<>();
+        for (String id : affected) {
+            if (ClassicVersion.hasClassicVersion(getBaseDirectory()) && id.equals(new ClassicVersion().getId()))
+                continue;
+
+            Version version = parsed.get(id);
+            boolean existed = versions.containsKey(id);
+            Version resolved = version == null ? null : loadResolvedVersion(version, provider);
+            if (resolved != null) {
+                versions.put(id, version);
+                resolvedVersions.put(id, new Pair<>(version, resolved));
+                (existed ? changed : added).add(id);
+            } else if (existed) {
+                versions.remove(id);
+                removed.add(id);
+            }
+        }
+
+        if (VersionCache.getInstance() != null)
+            VersionCache.getInstance().save();
+        return new VersionsChangedEvent(this, added, removed, changed);
+    }
+
+    /**
+     * Reloads the given versions only.
+     *
+     * @see #refreshVersionsImpl(Collection)
+     */
+    public void refreshVersions(Collection<String> ids) {
+        VersionsChangedEvent event = refreshVersionsImpl(ids);
+        if (event != null && !event.isEmpty())
+            EventBus.EVENT_BUS.fireEvent(event);
+    }
+
+    /**
+     * Watches the versions directory and reloads changed versions by {@link #refreshVersions(Collection)}
+     * once they are modified, until {@link #stopWatching()} is called.
+     * Versions should be refreshed once after watching started.
+     */
+    public synchronized void startWatching() {
+        stopWatching();
+        try {
+            watcher = new VersionsWatcher(this, new File(getBaseDirectory(), "versions").toPath());
+            watcher.start();
+        } catch (IOException e) {
+            Logging.LOG.log(Level.WARNING, "Unable to watch versions directory of " + getBaseDirectory(), e);
+        }
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.stop();
+            watcher = null;
+        }
+    }
+
+    public synchronized boolean isWatching() {
+        return watcher != null;
     }
 
     @Override
@@ -266,9 +494,18 @@ public class DefaultGameRepository implements GameRepository {
 
     @Override
     public AssetIndex getAssetIndex(String version, String assetId) throws IOException {
+        return getCompactAssetIndex(version, assetId).toAssetIndex();
+    }
+
+    /**
+     * Get asset index that assetId represents, which is shared until the index file is modified.
+     *
+     * @see #getAssetIndex(String, String)
+     */
+    public CompactAssetIndex getCompactAssetIndex(String version, String assetId) throws IOException {
         try {
-            return Objects.requireNonNull(Constants.GSON.fromJson(FileUtils.readText(getIndexFile(version, assetId)), AssetIndex.class));
-        } catch (JsonParseException | NullPointerException e) {
+            return CompactAssetIndex.load(getIndexFile(version, assetId).toPath());
+        } catch (JsonParseException e) {
             throw new IOException("Asset index file malformed", e);
         }
     }
@@ -291,7 +528,7 @@ public class DefaultGameRepository implements GameRepository {
     @Override
     public File getAssetObject(String version, String assetId, String name) throws IOException {
         try {
-            return getAssetObject(version, assetId, getAssetIndex(version, assetId).getObjects().get(name));
+            return getAssetObject(version, assetId, getCompactAssetIndex(version, assetId).getObject(name).get());
         } catch (IOException e) {
             throw e;
         } catch (Exception e) {
@@ -318,41 +555,73 @@ public class DefaultGameRepository implements GameRepository {
         return new File(getAssetDirectory(version, assetId), "log_configs/" + loggingInfo.getFile().getId());
     }
 
+    /**
+     * Reconstructs the virtual asset directory, which old versions read assets from, by hard links to
+     * asset objects, or copies if hard links are not supported.
+     *
+     * Once all objects are in place, a marker holding the SHA-1 of the asset index is written,
+     * so that the directory is not walked again until the asset index is changed.
+     *
+     * @return the asset directory the game should use.
+     */
     protected File reconstructAssets(String version, String assetId) throws IOException, JsonParseException {
         File assetsDir = getAssetDirectory(version, assetId);
         File indexFile = getIndexFile(version, assetId);
         File virtualRoot = new File(new File(assetsDir, "virtual"), assetId);
+        File marker = new File(new File(assetsDir, "virtual"), assetId + ".complete");
 
         if (!indexFile.isFile())
             return assetsDir;
 
-        String assetIndexContent = FileUtils.readText(indexFile);
-        AssetIndex index = Constants.GSON.fromJson(assetIndexContent, AssetIndex.class);
+        CompactAssetIndex index = CompactAssetIndex.load(indexFile.toPath());
 
-        if (index == null)
+        if (!index.isVirtual())
             return assetsDir;
 
-        if (index.isVirtual()) {
-            int cnt = 0;
-            int tot = index.getObjects().entrySet().size();
-            for (Map.Entry<String, AssetObject> entry : index.getObjects().entrySet()) {
-                File target = new File(virtualRoot, entry.getKey());
-                File original = getAssetObject(version, assetsDir, entry.getValue());
-                if (original.exists()) {
-                    cnt++;
-                    if (!target.isFile())
-                        FileUtils.copyFile(original, target);
+        String indexHash = Hex.encodeHex(DigestUtils.digest("SHA-1", indexFile.toPath()));
+        if (virtualRoot.isDirectory() && marker.isFile() && indexHash.equals(FileUtils.readText(marker).trim()))
+            return virtualRoot;
+
+        long startTime = System.currentTimeMillis();
+        int tot = index.size();
+        AtomicInteger linked = new AtomicInteger(), copied = new AtomicInteger();
+        int cnt = (int) IntStream.range(0, tot).parallel().filter(i -> {
+            Path target = virtualRoot.toPath().resolve(index.getName(i));
+            Path original = getAssetObject(version, assetsDir, index.getObject(i)).toPath();
+            try {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.createLink(target, original);
+                    linked.incrementAndGet();
+                } catch (FileAlreadyExistsException | NoSuchFileException e) {
+                    throw e;
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    // Hard links are not supported by the file system, or the objects are on another drive.
+                    Files.copy(original, target);
+                    copied.incrementAndGet();
                 }
+                return true;
+            } catch (FileAlreadyExistsException e) {
+                return true;
+            } catch (NoSuchFileException e) {
+                return false;
+            } catch (IOException e) {
+                Logging.LOG.log(Level.WARNING, "Unable to reconstruct asset object " + target, e);
+                return false;
             }
+        }).count();
 
-            // If the scale new format existent file is lower then 0.1, use the old format.
-            if (cnt * 10 < tot)
-                return assetsDir;
-            else
-                return virtualRoot;
-        }
+        Logging.LOG.info("Reconstructed virtual assets " + assetId + " in " + (System.currentTimeMillis() - startTime) + "ms, "
+                + cnt + "/" + tot + " objects present, " + linked.get() + " linked, " + copied.get() + " copied");
 
-        return assetsDir;
+        if (cnt == tot)
+            FileUtils.writeText(marker, indexHash);
+
+        // If the scale new format existent file is lower then 0.1, use the old format.
+        if (cnt * 10 < tot)
+            return assetsDir;
+        else
+            return virtualRoot;
     }
 
     public boolean isLoaded() {
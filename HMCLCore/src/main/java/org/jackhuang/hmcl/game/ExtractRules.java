@@ -43,6 +43,11 @@ public final class ExtractRules {
         return Collections.unmodifiableList(exclude);
     }
 
+    // The field as it is, for VersionCodec.
+    List<String> rawExclude() {
+        return exclude;
+    }
+
     public boolean shouldExtract(String path) {
         return exclude.stream().noneMatch(path::startsWith);
     }
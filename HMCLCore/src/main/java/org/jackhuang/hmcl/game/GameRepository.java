@@ -52,6 +52,14 @@ public interface GameRepository extends VersionProvider {
     @Override
     Version getVersion(String id) throws VersionNotFoundException;
 
+    /**
+     * Get the version with its inheritances merged.
+     * Implementations may cache resolved versions until the version or one of its ancestors changes.
+     *
+     * @param id the id of version
+     * @return the resolved version
+     * @throws VersionNotFoundException if no version is id, or one of its ancestors does not exist.
+     */
     default Version getResolvedVersion(String id) throws VersionNotFoundException {
         return getVersion(id).resolve(this);
     }
@@ -133,7 +141,7 @@ public interface GameRepository extends VersionProvider {
      * @return the minecraft jar
      */
     default File getVersionJar(String version) throws VersionNotFoundException {
-        return getVersionJar(getVersion(version).resolve(this));
+        return getVersionJar(getResolvedVersion(version));
     }
 
     /**
@@ -47,6 +47,8 @@ public class LaunchOptions implements Serializable {
     private String proxyUser;
     private String proxyPass;
     private boolean noGeneratedJVMArgs;
+    private boolean classDataSharing;
+    private boolean structuredLogging;
     private String preLaunchCommand;
 
     /**
@@ -185,6 +187,23 @@ public class LaunchOptions implements Serializable {
         return noGeneratedJVMArgs;
     }
 
+    /**
+     * Share the classes loaded by the game across launches by a dynamic CDS archive, if the Java supports it.
+     *
+     * @see org.jackhuang.hmcl.launch.ClassDataSharing
+     */
+    public boolean isClassDataSharing() {
+        return classDataSharing;
+    }
+
+    /**
+     * Launch the game with the log4j2 configuration of the launcher, which reports the level of each log event,
+     * instead of guessing levels from the text.
+     */
+    public boolean isStructuredLogging() {
+        return structuredLogging;
+    }
+
     /**
      * Called command line before launching the game.
      */
@@ -295,6 +314,16 @@ public class LaunchOptions implements Serializable {
             return this;
         }
 
+        public Builder setClassDataSharing(boolean classDataSharing) {
+            options.classDataSharing = classDataSharing;
+            return this;
+        }
+
+        public Builder setStructuredLogging(boolean structuredLogging) {
+            options.structuredLogging = structuredLogging;
+            return this;
+        }
+
         public Builder setPrecalledCommand(String precalledCommand) {
             options.preLaunchCommand = precalledCommand;
             return this;
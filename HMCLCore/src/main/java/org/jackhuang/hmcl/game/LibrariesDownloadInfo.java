@@ -50,4 +50,9 @@ public final class LibrariesDownloadInfo {
         return classifiers == null ? Collections.EMPTY_MAP : Collections.unmodifiableMap(classifiers);
     }
 
+    // The field as it is, for VersionCodec.
+    Map<String, LibraryDownloadInfo> rawClassifiers() {
+        return classifiers;
+    }
+
 }
@@ -141,6 +141,28 @@ public class Library implements Comparable<Library> {
         return rules;
     }
 
+    // The fields as they are, for VersionCodec.
+
+    String rawClassifier() {
+        return classifier;
+    }
+
+    String rawUrl() {
+        return url;
+    }
+
+    LibrariesDownloadInfo rawDownloads() {
+        return downloads;
+    }
+
+    ExtractRules rawExtract() {
+        return extract;
+    }
+
+    Map<OperatingSystem, String> rawNatives() {
+        return natives;
+    }
+
     public boolean is(String groupId, String artifactId) {
         return this.groupId.equals(groupId) && this.artifactId.equals(artifactId);
     }
@@ -55,6 +55,16 @@ public class RuledArgument implements Argument {
         return Collections.unmodifiableList(value);
     }
 
+    // The fields as they are, for VersionCodec.
+
+    List<CompatibilityRule> rawRules() {
+        return rules;
+    }
+
+    List<String> rawValue() {
+        return value;
+    }
+
     @Override
     public Object clone() {
         return new RuledArgument(
@@ -107,6 +107,13 @@ public class Version implements Comparable<Version>, Validation {
         return inheritsFrom;
     }
 
+    /**
+     * @return true if this version is returned by {@link #resolve(VersionProvider)}.
+     */
+    public boolean isResolved() {
+        return resolved;
+    }
+
     public int getMinimumLauncherVersion() {
         return minimumLauncherVersion;
     }
@@ -115,6 +122,28 @@ public class Version implements Comparable<Version>, Validation {
         return hidden;
     }
 
+    // The fields as they are, for VersionCodec.
+
+    AssetIndexInfo rawAssetIndex() {
+        return assetIndex;
+    }
+
+    String rawAssets() {
+        return assets;
+    }
+
+    List<CompatibilityRule> rawCompatibilityRules() {
+        return compatibilityRules;
+    }
+
+    Map<DownloadType, DownloadInfo> rawDownloads() {
+        return downloads;
+    }
+
+    Map<DownloadType, LoggingInfo> rawLogging() {
+        return logging;
+    }
+
     public Map<DownloadType, LoggingInfo> getLogging() {
         return logging == null ? Collections.EMPTY_MAP : Collections.unmodifiableMap(logging);
     }
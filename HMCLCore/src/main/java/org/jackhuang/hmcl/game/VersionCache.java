@@ -0,0 +1,266 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.game;
+
+import com.google.gson.JsonParseException;
+import org.jackhuang.hmcl.util.Constants;
+import org.jackhuang.hmcl.util.Logging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The disk cache of version jsons that have been read, so that the launcher does not read and parse
+ * hundreds of version json files one by one on startup, nor parse them again on every refresh.
+ *
+ * All the versions are stored in one gzipped binary file, each of which consists of the absolute path,
+ * size and last modified time of its json file, and the version parsed from it, written by {@link VersionCodec}.
+ * The file starts with the launcher version and the hash of the schema of {@link Version},
+ * the whole cache is dropped if either differs, e.g. after the launcher is upgraded.
+ * A version is used only if its json file is unchanged, it is decoded only when it is requested,
+ * and the decoded version, which is immutable, is kept in memory instead of the encoded one.
+ *
+ * @author huangyuhui
+ */
+public final class VersionCache {
+
+    private final Path cacheFile;
+    private final String tag;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private boolean loaded = false;
+    private volatile boolean dirty = false;
+
+    /**
+     * @param tag the version of the launcher, the cache written by another version is dropped.
+     */
+    public VersionCache(Path cacheFile, String tag) {
+        this.cacheFile = cacheFile;
+        this.tag = tag;
+    }
+
+    /**
+     * Reads the version json {@code file} from cache if it is unchanged since cached,
+     * or from the file otherwise, whose content will be cached.
+     *
+     * @return the version read, may be null if the json file is empty.
+     */
+    public Version read(Path file) throws IOException, JsonParseException {
+        load();
+
+        String key = file.toAbsolutePath().toString();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            entries.remove(key);
+            throw e;
+        }
+
+        Entry entry = entries.get(key);
+        if (entry != null && entry.matches(attributes)) {
+            Version version = entry.decode();
+            if (version != null)
+                return version;
+            entries.remove(key, entry);
+        }
+
+        Version version = parse(Files.readAllBytes(file));
+        // The file may be modified while reading, then it will be read again next time.
+        Entry newEntry = new Entry(attributes.size(), attributes.lastModifiedTime().toMillis(), null);
+        if (version != null && newEntry.matches(Files.readAttributes(file, BasicFileAttributes.class))) {
+            newEntry.decoded = version;
+            entries.put(key, newEntry);
+            dirty = true;
+        }
+        return version;
+    }
+
+    private static Version parse(byte[] data) throws JsonParseException {
+        return Constants.GSON.fromJson(new InputStreamReader(new ByteArrayInputStream(data), UTF_8), Version.class);
+    }
+
+    private synchronized void load() {
+        if (loaded)
+            return;
+        loaded = true;
+
+        if (!VersionCodec.isSupported() || !Files.isRegularFile(cacheFile))
+            return;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(cacheFile))))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION
+                    || !tag.equals(input.readUTF()) || input.readInt() != VersionCodec.SCHEMA_HASH)
+                return;
+
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = input.readUTF();
+                long size = input.readLong();
+                long lastModified = input.readLong();
+                byte[] data = new byte[input.readInt()];
+                input.readFully(data);
+                entries.putIfAbsent(key, new Entry(size, lastModified, data));
+            }
+        } catch (EOFException e) {
+            Logging.LOG.log(Level.WARNING, "Version cache " + cacheFile + " is truncated", e);
+        } catch (IOException e) {
+            Logging.LOG.log(Level.WARNING, "Unable to load version cache " + cacheFile, e);
+        }
+    }
+
+    /**
+     * Writes the cache to disk if it has been changed.
+     * Versions whose json files no longer exist are dropped.
+     */
+    public synchronized void save() {
+        if (!dirty || !VersionCodec.isSupported())
+            return;
+        dirty = false;
+
+        entries.keySet().removeIf(key -> !Files.isRegularFile(cacheFile.getFileSystem().getPath(key)));
+
+        try {
+            Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+            Path temp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp))))) {
+                Map<String, Entry> snapshot = new HashMap<>(entries);
+                Map<String, byte[]> encoded = new HashMap<>();
+                for (Map.Entry<String, Entry> entry : snapshot.entrySet()) {
+                    byte[] data = entry.getValue().encode();
+                    if (data != null)
+                        encoded.put(entry.getKey(), data);
+                }
+
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                output.writeUTF(tag);
+                output.writeInt(VersionCodec.SCHEMA_HASH);
+                output.writeInt(encoded.size());
+                for (Map.Entry<String, byte[]> entry : encoded.entrySet()) {
+                    Entry value = snapshot.get(entry.getKey());
+                    output.writeUTF(entry.getKey());
+                    output.writeLong(value.size);
+                    output.writeLong(value.lastModified);
+                    output.writeInt(entry.getValue().length);
+                    output.write(entry.getValue());
+                }
+            }
+            Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Logging.LOG.log(Level.WARNING, "Unable to save version cache " + cacheFile, e);
+        }
+    }
+
+    private static final class Entry {
+        private final long size;
+        private final long lastModified;
+        // Either the version encoded by VersionCodec, which is released once decoded, or the decoded one.
+        private volatile byte[] data;
+        private volatile Version decoded;
+
+        Entry(long size, long lastModified, byte[] data) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.data = data;
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size() && lastModified == attributes.lastModifiedTime().toMillis();
+        }
+
+        /**
+         * @return the decoded version, null if the encoded one is broken.
+         */
+        Version decode() {
+            Version version = decoded;
+            if (version != null)
+                return version;
+            byte[] bytes = data;
+            if (bytes == null)
+                return decoded;
+            try {
+                version = VersionCodec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+            } catch (IOException e) {
+                Logging.LOG.log(Level.WARNING, "Unable to decode cached version", e);
+                return null;
+            }
+            decoded = version;
+            data = null;
+            return version;
+        }
+
+        /**
+         * @return the encoded version, null if the version cannot be encoded.
+         */
+        byte[] encode() {
+            // Read decoded after data, as decode() sets decoded before releasing data.
+            byte[] bytes = data;
+            if (bytes != null)
+                return bytes;
+            Version version = decoded;
+            if (version == null)
+                return null;
+            try {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                VersionCodec.write(new DataOutputStream(output), version);
+                return output.toByteArray();
+            } catch (IOException e) {
+                Logging.LOG.log(Level.FINE, "Unable to encode version " + version.getId(), e);
+                return null;
+            }
+        }
+    }
+
+    private static final int MAGIC = 0x484D4356; // "HMCV"
+    private static final int FORMAT_VERSION = 3;
+
+    private static VersionCache instance = null;
+
+    /**
+     * The cache used by {@link DefaultGameRepository} when loading versions.
+     *
+     * @return the version cache, null if version cache is disabled.
+     */
+    public static VersionCache getInstance() {
+        return instance;
+    }
+
+    public static void setInstance(VersionCache instance) {
+        VersionCache.instance = instance;
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.game;
+
+import org.jackhuang.hmcl.util.Logging;
+import org.jackhuang.hmcl.util.OperatingSystem;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes {@link Version}s parsed from version jsons in a compact binary form, and reads them back
+ * without reflection, which is several times faster than parsing the json by Gson.
+ *
+ * The fields are written as they are and read back through the public constructors,
+ * so a version read equals the one parsed from json, except that missing libraries and times
+ * are filled in by the constructor of {@link Version}, as every copy of a version does.
+ *
+ * Once a field of a class written here is added, removed or changed, {@link #SCHEMA_HASH} changes
+ * and this codec is disabled until it is updated together with {@link #EXPECTED_SCHEMA_HASH}.
+ *
+ * @author huangyuhui
+ */
+final class VersionCodec {
+
+    private VersionCodec() {
+    }
+
+    /**
+     * @return false if the schema of {@link Version} has been changed but this codec has not.
+     */
+    static boolean isSupported() {
+        return SCHEMA_HASH == EXPECTED_SCHEMA_HASH;
+    }
+
+    /**
+     * @throws IOException if {@code version} contains objects that this codec cannot write, e.g. subclasses.
+     */
+    static void write(DataOutput out, Version version) throws IOException {
+        checkClass(version, Version.class);
+        out.writeBoolean(version.isResolved());
+        writeString(out, version.getId());
+        writeString(out, version.getMinecraftArguments().orElse(null));
+        writeNullable(out, version.getArguments().orElse(null), VersionCodec::writeArguments);
+        writeString(out, version.getMainClass());
+        writeString(out, version.getInheritsFrom());
+        writeString(out, version.getJar());
+        writeNullable(out, version.rawAssetIndex(), VersionCodec::writeAssetIndexInfo);
+        writeString(out, version.rawAssets());
+        writeList(out, version.getLibraries(), VersionCodec::writeLibrary);
+        writeList(out, version.rawCompatibilityRules(), VersionCodec::writeRule);
+        writeMap(out, version.rawDownloads(), VersionCodec::writeEnum, VersionCodec::writeDownloadInfo);
+        writeMap(out, version.rawLogging(), VersionCodec::writeEnum, VersionCodec::writeLoggingInfo);
+        writeEnum(out, version.getType());
+        writeDate(out, version.getTime());
+        writeDate(out, version.getReleaseTime());
+        out.writeInt(version.getMinimumLauncherVersion());
+        out.writeBoolean(version.isHidden());
+    }
+
+    static Version read(DataInput in) throws IOException {
+        boolean resolved = in.readBoolean();
+        String id = readString(in);
+        String minecraftArguments = readString(in);
+        Arguments arguments = readNullable(in, VersionCodec::readArguments);
+        String mainClass = readString(in);
+        String inheritsFrom = readString(in);
+        String jar = readString(in);
+        AssetIndexInfo assetIndex = readNullable(in, VersionCodec::readAssetIndexInfo);
+        String assets = readString(in);
+        List<Library> libraries = readList(in, VersionCodec::readLibrary);
+        List<CompatibilityRule> compatibilityRules = readList(in, VersionCodec::readRule);
+        Map<DownloadType, DownloadInfo> downloads = readMap(in, input -> readEnum(input, DownloadType.class), VersionCodec::readDownloadInfo);
+        Map<DownloadType, LoggingInfo> logging = readMap(in, input -> readEnum(input, DownloadType.class), VersionCodec::readLoggingInfo);
+        ReleaseType type = readEnum(in, ReleaseType.class);
+        Date time = readDate(in);
+        Date releaseTime = readDate(in);
+        int minimumLauncherVersion = in.readInt();
+        boolean hidden = in.readBoolean();
+        return new Version(resolved, id, minecraftArguments, arguments, mainClass, inheritsFrom, jar, assetIndex, assets,
+                libraries == null ? Collections.emptyList() : libraries, compatibilityRules, downloads, logging,
+                type, time, releaseTime, minimumLauncherVersion, hidden);
+    }
+
+    private static void writeArguments(DataOutput out, Arguments arguments) throws IOException {
+        writeList(out, arguments.rawGame(), VersionCodec::writeArgument);
+        writeList(out, arguments.rawJvm(), VersionCodec::writeArgument);
+    }
+
+    private static Arguments readArguments(DataInput in) throws IOException {
+        return new Arguments(readList(in, VersionCodec::readArgument), readList(in, VersionCodec::readArgument));
+    }
+
+    private static void writeArgument(DataOutput out, Argument argument) throws IOException {
+        if (argument != null && argument.getClass() == StringArgument.class) {
+            out.writeByte(STRING_ARGUMENT);
+            writeString(out, ((StringArgument) argument).getArgument());
+        } else {
+            checkClass(argument, RuledArgument.class);
+            RuledArgument ruled = (RuledArgument) argument;
+            out.writeByte(RULED_ARGUMENT);
+            writeList(out, ruled.rawRules(), VersionCodec::writeRule);
+            writeList(out, ruled.rawValue(), VersionCodec::writeString);
+        }
+    }
+
+    private static Argument readArgument(DataInput in) throws IOException {
+        switch (in.readByte()) {
+            case STRING_ARGUMENT:
+                return new StringArgument(readString(in));
+            case RULED_ARGUMENT:
+                return new RuledArgument(readList(in, VersionCodec::readRule), readList(in, VersionCodec::readString));
+            default:
+                throw new IOException("Unknown argument type");
+        }
+    }
+
+    private static void writeRule(DataOutput out, CompatibilityRule rule) throws IOException {
+        checkClass(rule, CompatibilityRule.class);
+        writeEnum(out, rule.rawAction());
+        writeNullable(out, rule.rawOs(), VersionCodec::writeOSRestriction);
+        writeMap(out, rule.rawFeatures(), VersionCodec::writeString, VersionCodec::writeBoolean);
+    }
+
+    private static CompatibilityRule readRule(DataInput in) throws IOException {
+        return new CompatibilityRule(
+                readEnum(in, CompatibilityRule.Action.class),
+                readNullable(in, VersionCodec::readOSRestriction),
+                readMap(in, VersionCodec::readString, VersionCodec::readBoolean));
+    }
+
+    private static void writeOSRestriction(DataOutput out, OSRestriction os) throws IOException {
+        checkClass(os, OSRestriction.class);
+        writeEnum(out, os.getName());
+        writeString(out, os.getVersion());
+        writeString(out, os.getArch());
+    }
+
+    private static OSRestriction readOSRestriction(DataInput in) throws IOException {
+        return new OSRestriction(readEnum(in, OperatingSystem.class), readString(in), readString(in));
+    }
+
+    private static void writeLibrary(DataOutput out, Library library) throws IOException {
+        checkClass(library, Library.class);
+        writeString(out, library.getGroupId());
+        writeString(out, library.getArtifactId());
+        writeString(out, library.getVersion());
+        writeString(out, library.rawClassifier());
+        writeString(out, library.rawUrl());
+        writeNullable(out, library.rawDownloads(), VersionCodec::writeLibrariesDownloadInfo);
+        writeList(out, library.getChecksums(), VersionCodec::writeString);
+        writeNullable(out, library.rawExtract(), (output, extract) -> {
+            checkClass(extract, ExtractRules.class);
+            writeList(output, extract.rawExclude(), VersionCodec::writeString);
+        });
+        writeMap(out, library.rawNatives(), VersionCodec::writeEnum, VersionCodec::writeString);
+        writeList(out, library.getRules(), VersionCodec::writeRule);
+    }
+
+    private static Library readLibrary(DataInput in) throws IOException {
+        String groupId = readString(in), artifactId = readString(in), version = readString(in);
+        // The classifier written is the one computed from natives, which computes the same again.
+        String classifier = readString(in), url = readString(in);
+        LibrariesDownloadInfo downloads = readNullable(in, VersionCodec::readLibrariesDownloadInfo);
+        List<String> checksums = readList(in, VersionCodec::readString);
+        ExtractRules extract = readNullable(in, input -> {
+            List<String> exclude = readList(input, VersionCodec::readString);
+            return exclude == null ? new ExtractRules() : new ExtractRules(exclude);
+        });
+        Map<OperatingSystem, String> natives = readMap(in, input -> readEnum(input, OperatingSystem.class), VersionCodec::readString);
+        List<CompatibilityRule> rules = readList(in, VersionCodec::readRule);
+        return new Library(groupId, artifactId, version, classifier, url, downloads, checksums, extract, natives, rules);
+    }
+
+    private static void writeLibrariesDownloadInfo(DataOutput out, LibrariesDownloadInfo info) throws IOException {
+        checkClass(info, LibrariesDownloadInfo.class);
+        writeNullable(out, info.getArtifact(), VersionCodec::writeLibraryDownloadInfo);
+        writeMap(out, info.rawClassifiers(), VersionCodec::writeString, VersionCodec::writeLibraryDownloadInfo);
+    }
+
+    private static LibrariesDownloadInfo readLibrariesDownloadInfo(DataInput in) throws IOException {
+        return new LibrariesDownloadInfo(
+                readNullable(in, VersionCodec::readLibraryDownloadInfo),
+                readMap(in, VersionCodec::readString, VersionCodec::readLibraryDownloadInfo));
+    }
+
+    private static void writeLibraryDownloadInfo(DataOutput out, LibraryDownloadInfo info) throws IOException {
+        checkClass(info, LibraryDownloadInfo.class);
+        writeString(out, info.getPath());
+        writeDownloadInfoFields(out, info);
+    }
+
+    private static LibraryDownloadInfo readLibraryDownloadInfo(DataInput in) throws IOException {
+        return new LibraryDownloadInfo(readString(in), readString(in), readString(in), in.readInt());
+    }
+
+    private static void writeDownloadInfo(DataOutput out, DownloadInfo info) throws IOException {
+        checkClass(info, DownloadInfo.class);
+        writeDownloadInfoFields(out, info);
+    }
+
+    private static DownloadInfo readDownloadInfo(DataInput in) throws IOException {
+        return new DownloadInfo(readString(in), readString(in), in.readInt());
+    }
+
+    private static void writeIdDownloadInfo(DataOutput out, IdDownloadInfo info) throws IOException {
+        checkClass(info, IdDownloadInfo.class);
+        writeString(out, info.getId());
+        writeDownloadInfoFields(out, info);
+    }
+
+    private static IdDownloadInfo readIdDownloadInfo(DataInput in) throws IOException {
+        return new IdDownloadInfo(readString(in), readString(in), readString(in), in.readInt());
+    }
+
+    private static void writeAssetIndexInfo(DataOutput out, AssetIndexInfo info) throws IOException {
+        checkClass(info, AssetIndexInfo.class);
+        writeString(out, info.getId());
+        writeDownloadInfoFields(out, info);
+        out.writeLong(info.getTotalSize());
+    }
+
+    private static AssetIndexInfo readAssetIndexInfo(DataInput in) throws IOException {
+        return new AssetIndexInfo(readString(in), readString(in), readString(in), in.readInt(), in.readLong());
+    }
+
+    private static void writeDownloadInfoFields(DataOutput out, DownloadInfo info) throws IOException {
+        writeString(out, info.getUrl());
+        writeString(out, info.getSha1());
+        out.writeInt(info.getSize());
+    }
+
+    private static void writeLoggingInfo(DataOutput out, LoggingInfo info) throws IOException {
+        checkClass(info, LoggingInfo.class);
+        writeNullable(out, info.getFile(), VersionCodec::writeIdDownloadInfo);
+        writeString(out, info.getArgument());
+        writeString(out, info.getType());
+    }
+
+    private static LoggingInfo readLoggingInfo(DataInput in) throws IOException {
+        return new LoggingInfo(readNullable(in, VersionCodec::readIdDownloadInfo), readString(in), readString(in));
+    }
+
+    private static void checkClass(Object object, Class<?> clazz) throws IOException {
+        if (object == null || object.getClass() != clazz)
+            throw new IOException("Unsupported object " + object + ", expected " + clazz.getName());
+    }
+
+    private static void writeString(DataOutput out, String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+        } else {
+            // DataOutput.writeUTF is limited to 64KB.
+            byte[] bytes = str.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void writeBoolean(DataOutput out, Boolean value) throws IOException {
+        out.writeByte(value == null ? -1 : value ? 1 : 0);
+    }
+
+    private static Boolean readBoolean(DataInput in) throws IOException {
+        byte value = in.readByte();
+        return value < 0 ? null : value != 0;
+    }
+
+    private static void writeEnum(DataOutput out, Enum<?> value) throws IOException {
+        writeString(out, value == null ? null : value.name());
+    }
+
+    private static <E extends Enum<E>> E readEnum(DataInput in, Class<E> type) throws IOException {
+        String name = readString(in);
+        try {
+            return name == null ? null : Enum.valueOf(type, name);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unknown " + type.getSimpleName() + " " + name, e);
+        }
+    }
+
+    private static void writeDate(DataOutput out, Date date) throws IOException {
+        out.writeBoolean(date != null);
+        if (date != null)
+            out.writeLong(date.getTime());
+    }
+
+    private static Date readDate(DataInput in) throws IOException {
+        return in.readBoolean() ? new Date(in.readLong()) : null;
+    }
+
+    private static <T> void writeNullable(DataOutput out, T value, Writer<? super T> writer) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            writer.write(out, value);
+    }
+
+    private static <T> T readNullable(DataInput in, Reader<T> reader) throws IOException {
+        return in.readBoolean() ? reader.read(in) : null;
+    }
+
+    private static <T> void writeList(DataOutput out, List<T> list, Writer<? super T> writer) throws IOException {
+        if (list == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(list.size());
+        for (T item : list)
+            writer.write(out, item);
+    }
+
+    private static <T> List<T> readList(DataInput in, Reader<T> reader) throws IOException {
+        int size = in.readInt();
+        if (size < 0)
+            return null;
+        List<T> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+            list.add(reader.read(in));
+        return list;
+    }
+
+    private static <K, V> void writeMap(DataOutput out, Map<K, V> map, Writer<? super K> keyWriter, Writer<? super V> valueWriter) throws IOException {
+        if (map == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(map.size());
+        for (Map.Entry<K, V> entry : map.entrySet()) {
+            keyWriter.write(out, entry.getKey());
+            valueWriter.write(out, entry.getValue());
+        }
+    }
+
+    private static <K, V> Map<K, V> readMap(DataInput in, Reader<K> keyReader, Reader<V> valueReader) throws IOException {
+        int size = in.readInt();
+        if (size < 0)
+            return null;
+        Map<K, V> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            K key = keyReader.read(in);
+            map.put(key, valueReader.read(in));
+        }
+        return map;
+    }
+
+    @FunctionalInterface
+    private interface Writer<T> {
+        void write(DataOutput out, T value) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Reader<T> {
+        T read(DataInput in) throws IOException;
+    }
+
+    /**
+     * Hashes the fields of {@link Version} and the classes of this package it refers to, including type arguments,
+     * superclasses and the implementations of {@link Argument}.
+     */
+    private static int schemaHash() {
+        List<String> fields = new ArrayList<>();
+        Set<Class<?>> visited = new HashSet<>();
+        Deque<Class<?>> queue = new ArrayDeque<>(Arrays.asList(Version.class, StringArgument.class, RuledArgument.class));
+        while (!queue.isEmpty()) {
+            Class<?> clazz = queue.poll();
+            if (clazz.getPackage() != Version.class.getPackage() || !visited.add(clazz))
+                continue;
+            if (clazz.getSuperclass() != null)
+                queue.add(clazz.getSuperclass());
+            for (Field field : clazz.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers()))
+                    continue;
+                fields.add(clazz.getName() + "." + field.getName() + ":" + field.getGenericType().getTypeName());
+                addClasses(queue, field.getGenericType());
+            }
+        }
+        Collections.sort(fields);
+        return String.join("\n", fields).hashCode();
+    }
+
+    private static void addClasses(Deque<Class<?>> queue, Type type) {
+        if (type instanceof Class<?>)
+            queue.add((Class<?>) type);
+        else if (type instanceof ParameterizedType)
+            for (Type argument : ((ParameterizedType) type).getActualTypeArguments())
+                addClasses(queue, argument);
+    }
+
+    private static final byte STRING_ARGUMENT = 0;
+    private static final byte RULED_ARGUMENT = 1;
+
+    static final int SCHEMA_HASH = schemaHash();
+    private static final int EXPECTED_SCHEMA_HASH = -826825523;
+
+    static {
+        if (!isSupported())
+            Logging.LOG.warning("The schema of Version has been changed, VersionCodec should be updated, schema hash: " + SCHEMA_HASH);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.game;
+
+import org.jackhuang.hmcl.util.Lang;
+import org.jackhuang.hmcl.util.Logging;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the versions directory of a {@link DefaultGameRepository}, and reloads the versions
+ * whose directories or json files are changed.
+ *
+ * Changes are collected until the directory stays quiet for a while, so that an installation,
+ * which writes lots of files, only causes one reload.
+ *
+ * @author huangyuhui
+ */
+final class VersionsWatcher implements Runnable {
+
+    private final DefaultGameRepository repository;
+    private final Path versionsDirectory;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private Thread thread;
+
+    VersionsWatcher(DefaultGameRepository repository, Path versionsDirectory) throws IOException {
+        this.repository = repository;
+        this.versionsDirectory = versionsDirectory;
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        try {
+            Files.createDirectories(versionsDirectory);
+            register(versionsDirectory);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(versionsDirectory, Files::isDirectory)) {
+                for (Path dir : stream)
+                    register(dir);
+            }
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+    }
+
+    void start() {
+        thread = Lang.thread(this, "Versions Watcher", true);
+    }
+
+    void stop() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            Logging.LOG.log(Level.WARNING, "Unable to close watch service of " + versionsDirectory, e);
+        }
+        if (thread != null)
+            thread.interrupt();
+    }
+
+    private void register(Path dir) throws IOException {
+        keys.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                Set<String> changed = new HashSet<>();
+                boolean overflow = poll(watchService.take(), changed);
+
+                WatchKey key;
+                while ((key = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS)) != null)
+                    overflow |= poll(key, changed);
+
+                if (overflow)
+                    repository.refreshVersions();
+                else if (!changed.isEmpty())
+                    repository.refreshVersions(changed);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+        }
+    }
+
+    /**
+     * Collects the ids of changed versions from {@code key}.
+     *
+     * @return true if some events are lost and all the versions should be refreshed.
+     */
+    private boolean poll(WatchKey key, Set<String> changed) {
+        Path dir = keys.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+
+            Path name = (Path) event.context();
+            if (dir == null)
+                continue;
+            if (dir.equals(versionsDirectory)) {
+                // A version directory is created, removed or renamed.
+                Path child = dir.resolve(name);
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(child)) {
+                    try {
+                        register(child);
+                    } catch (IOException e) {
+                        Logging.LOG.log(Level.WARNING, "Unable to watch version directory " + child, e);
+                    }
+                }
+                changed.add(name.toString());
+            } else if (name.toString().endsWith(".json")) {
+                changed.add(dir.getFileName().toString());
+            }
+        }
+        if (!key.reset())
+            keys.remove(key);
+        return overflow;
+    }
+
+    private static final long QUIET_PERIOD = 500;
+}
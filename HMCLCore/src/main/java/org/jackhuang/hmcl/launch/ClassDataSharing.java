@@ -0,0 +1,152 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.launch;
+
+import org.jackhuang.hmcl.util.DigestUtils;
+import org.jackhuang.hmcl.util.Hex;
+import org.jackhuang.hmcl.util.JavaVersion;
+import org.jackhuang.hmcl.util.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The dynamic CDS archives of game versions, which let the JVM map the classes loaded by the previous launch
+ * instead of loading and verifying them again.
+ *
+ * Archives are stored as {@code <directory>/<version id>/<fingerprint>.jsa}. The fingerprint is the SHA-1 of
+ * the Java binary, the classpath and the mods, so an archive is created again once any of them is changed,
+ * and the stale archive of the version is removed.
+ *
+ * @author huangyuhui
+ */
+public final class ClassDataSharing {
+
+    private final Path directory;
+
+    public ClassDataSharing(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Dynamic archives are supported since Java 13.
+     */
+    public static boolean isSupported(JavaVersion java) {
+        return java.getParsedVersion() >= JavaVersion.JAVA_13;
+    }
+
+    /**
+     * Generates the JVM arguments that use the archive of the version, or create it at exit if it does not exist.
+     *
+     * @param classpath the classpath that the game is launched with.
+     * @param modsDirectory the directory containing mods of the version.
+     * @return the JVM arguments, empty if the Java does not support dynamic archives.
+     */
+    public List<String> getArguments(JavaVersion java, String versionId, List<String> classpath, File modsDirectory) throws IOException {
+        if (!isSupported(java))
+            return Collections.emptyList();
+
+        Path versionDirectory = directory.resolve(versionId);
+        Path archive = versionDirectory.resolve(fingerprint(java, classpath, modsDirectory) + ".jsa");
+
+        if (Files.isRegularFile(archive))
+            return Collections.singletonList("-XX:SharedArchiveFile=" + archive);
+
+        // The archive is written by the JVM when the game exits.
+        Files.createDirectories(versionDirectory);
+        removeStaleArchives(versionDirectory, archive);
+        Logging.LOG.info("Class data sharing archive of " + versionId + " will be created at " + archive);
+        return Collections.singletonList("-XX:ArchiveClassesAtExit=" + archive);
+    }
+
+    private static String fingerprint(JavaVersion java, List<String> classpath, File modsDirectory) throws IOException {
+        MessageDigest digest = DigestUtils.getDigest("SHA-1");
+        update(digest, java.getVersion());
+        update(digest, java.getBinary().toPath());
+        for (String file : classpath)
+            update(digest, new File(file).toPath());
+
+        // Mod loaders also load mods in subdirectories, e.g. mods/<game version>.
+        if (modsDirectory.isDirectory()) {
+            List<Path> mods;
+            try (Stream<Path> stream = Files.walk(modsDirectory.toPath())) {
+                mods = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+            for (Path mod : mods)
+                update(digest, mod);
+        }
+        return Hex.encodeHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, Path file) throws IOException {
+        String state;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            state = attributes.size() + " " + attributes.lastModifiedTime().toMillis();
+        } catch (NoSuchFileException e) {
+            state = "-";
+        }
+        update(digest, file.toAbsolutePath() + " " + state);
+    }
+
+    private static void update(MessageDigest digest, String str) {
+        digest.update(str.getBytes(UTF_8));
+        digest.update((byte) '\n');
+    }
+
+    private static void removeStaleArchives(Path versionDirectory, Path archive) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(versionDirectory, "*.jsa")) {
+            for (Path file : stream)
+                if (!file.equals(archive))
+                    Files.deleteIfExists(file);
+        } catch (IOException e) {
+            Logging.LOG.log(Level.WARNING, "Unable to remove stale class data sharing archives in " + versionDirectory, e);
+        }
+    }
+
+    private static ClassDataSharing instance = null;
+
+    /**
+     * The archives used by {@link DefaultLauncher} if {@link org.jackhuang.hmcl.game.LaunchOptions#isClassDataSharing()}.
+     *
+     * @return the archives, null if class data sharing is disabled.
+     */
+    public static ClassDataSharing getInstance() {
+        return instance;
+    }
+
+    public static void setInstance(ClassDataSharing instance) {
+        ClassDataSharing.instance = instance;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.launch;
+
+import org.jackhuang.hmcl.util.Log4jLevel;
+import org.jackhuang.hmcl.util.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.jackhuang.hmcl.util.Pair.pair;
+
+/**
+ * Matches the output of a game against {@link CrashRules} while it is being pumped,
+ * so that the exit of the game can be classified right after it exits without scanning its output again.
+ *
+ * @author huangyuhui
+ */
+public final class CrashAnalyzer {
+
+    private final CrashRules rules;
+    private final String[] firstLines;
+    // The fired rules and the first line firing them, in firing order.
+    private final List<Pair<CrashRule, String>> matches = new ArrayList<>();
+
+    public CrashAnalyzer(CrashRules rules) {
+        this.rules = rules;
+        this.firstLines = new String[rules.getRules().size()];
+    }
+
+    /**
+     * Matches a line of output.
+     *
+     * @param level the level of the line, null if unknown.
+     */
+    public synchronized void accept(String line, Log4jLevel level) {
+        if (matches.size() == firstLines.length)
+            return;
+        boolean error = level != null && Log4jLevel.isError(level);
+        rules.getAutomaton().search(line, signature -> {
+            int index = rules.getOwner(signature);
+            if (firstLines[index] != null)
+                return;
+            CrashRule rule = rules.getRules().get(index);
+            if (rule.isErrorOnly() && !error)
+                return;
+            firstLines[index] = line;
+            matches.add(pair(rule, line));
+        });
+    }
+
+    /**
+     * @return the fired rules and the first line firing each of them, in firing order.
+     */
+    public synchronized List<Pair<CrashRule, String>> getMatches() {
+        return new ArrayList<>(matches);
+    }
+
+    /**
+     * @param exitCode the exit code of the game.
+     * @return the fired rules that apply to the exit, in firing order.
+     */
+    public synchronized List<CrashRule> getFiredRules(int exitCode) {
+        List<CrashRule> fired = new ArrayList<>();
+        for (Pair<CrashRule, String> match : matches)
+            if (exitCode != 0 || match.getKey().isIgnoreExitCode())
+                fired.add(match.getKey());
+        return fired;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.launch;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+import org.jackhuang.hmcl.util.Immutable;
+import org.jackhuang.hmcl.util.StringUtils;
+import org.jackhuang.hmcl.util.Validation;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A known cause of game crashes, recognized by any of its signatures appearing in the output of the game.
+ *
+ * @author huangyuhui
+ * @see CrashAnalyzer
+ */
+@Immutable
+public final class CrashRule implements Validation {
+
+    @SerializedName("id")
+    private final String id;
+
+    @SerializedName("exitType")
+    private final ProcessListener.ExitType exitType;
+
+    @SerializedName("signatures")
+    private final List<String> signatures;
+
+    @SerializedName("errorOnly")
+    private final boolean errorOnly;
+
+    @SerializedName("ignoreExitCode")
+    private final boolean ignoreExitCode;
+
+    public CrashRule() {
+        this("", ProcessListener.ExitType.APPLICATION_ERROR, Collections.emptyList(), false, false);
+    }
+
+    public CrashRule(String id, ProcessListener.ExitType exitType, List<String> signatures, boolean errorOnly, boolean ignoreExitCode) {
+        this.id = id;
+        this.exitType = exitType;
+        this.signatures = signatures;
+        this.errorOnly = errorOnly;
+        this.ignoreExitCode = ignoreExitCode;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return how the exit of the game is classified if this rule fires.
+     */
+    public ProcessListener.ExitType getExitType() {
+        return exitType == null ? ProcessListener.ExitType.APPLICATION_ERROR : exitType;
+    }
+
+    /**
+     * @return the case insensitive strings, any of which appearing in a line of output fires this rule.
+     */
+    public List<String> getSignatures() {
+        return signatures == null ? Collections.emptyList() : Collections.unmodifiableList(signatures);
+    }
+
+    /**
+     * @return true if only lines classified as errors are matched.
+     */
+    public boolean isErrorOnly() {
+        return errorOnly;
+    }
+
+    /**
+     * @return true if this rule applies even if the game exits normally,
+     * for example, LaunchWrapper exits with code 0 after logging the exception.
+     */
+    public boolean isIgnoreExitCode() {
+        return ignoreExitCode;
+    }
+
+    @Override
+    public void validate() throws JsonParseException {
+        if (StringUtils.isBlank(id))
+            throw new JsonParseException("CrashRule.id is empty.");
+        if (signatures == null || signatures.isEmpty())
+            throw new JsonParseException("CrashRule.signatures is empty.");
+        for (String signature : signatures)
+            if (StringUtils.isBlank(signature))
+                throw new JsonParseException("CrashRule.signatures contains empty signature.");
+    }
+
+    @Override
+    public String toString() {
+        return "CrashRule[id=" + id + ", exitType=" + getExitType() + "]";
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.launch;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import org.jackhuang.hmcl.util.AhoCorasick;
+import org.jackhuang.hmcl.util.Constants;
+import org.jackhuang.hmcl.util.Immutable;
+import org.jackhuang.hmcl.util.IOUtils;
+import org.jackhuang.hmcl.util.JsonUtils;
+import org.jackhuang.hmcl.util.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A set of {@link CrashRule}s, with the signatures of all rules compiled into one {@link AhoCorasick} automaton,
+ * so that a line is matched against all signatures in a single pass.
+ *
+ * @author huangyuhui
+ */
+@Immutable
+public final class CrashRules {
+
+    private final List<CrashRule> rules;
+    private final AhoCorasick automaton;
+    // The index of rule that each signature belongs to.
+    private final int[] owners;
+
+    public CrashRules(List<CrashRule> rules) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+
+        List<String> signatures = new ArrayList<>();
+        List<Integer> owners = new ArrayList<>();
+        for (int i = 0; i < rules.size(); i++)
+            for (String signature : rules.get(i).getSignatures()) {
+                signatures.add(signature);
+                owners.add(i);
+            }
+        this.automaton = new AhoCorasick(signatures);
+        this.owners = owners.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public List<CrashRule> getRules() {
+        return rules;
+    }
+
+    AhoCorasick getAutomaton() {
+        return automaton;
+    }
+
+    /**
+     * @param signature the index of a signature reported by {@link #getAutomaton()}.
+     * @return the index of the rule that the signature belongs to.
+     */
+    int getOwner(int signature) {
+        return owners[signature];
+    }
+
+    /**
+     * @return a new rule set containing the rules of this set followed by {@code rules}.
+     */
+    public CrashRules concat(List<CrashRule> rules) {
+        List<CrashRule> all = new ArrayList<>(this.rules);
+        all.addAll(rules);
+        return new CrashRules(all);
+    }
+
+    /**
+     * Reads rules from a json file, which is an array of {@link CrashRule}.
+     */
+    public static List<CrashRule> readRules(File file) throws IOException, JsonParseException {
+        List<CrashRule> rules = JsonUtils.fromJsonFile(file, RULE_LIST_TYPE);
+        return rules == null ? Collections.emptyList() : rules;
+    }
+
+    private static final Type RULE_LIST_TYPE = new TypeToken<List<CrashRule>>() {
+    }.getType();
+
+    private static final String BUILTIN_RULES = "/assets/crash-rules.json";
+
+    private static CrashRules loadBuiltinRules() {
+        try (InputStream input = CrashRules.class.getResourceAsStream(BUILTIN_RULES)) {
+            if (input == null)
+                throw new IOException("Resource " + BUILTIN_RULES + " not found");
+            List<CrashRule> rules = Constants.GSON.fromJson(IOUtils.readFullyAsString(input, UTF_8), RULE_LIST_TYPE);
+            return new CrashRules(rules == null ? Collections.emptyList() : rules);
+        } catch (IOException | JsonParseException e) {
+            Logging.LOG.log(Level.WARNING, "Unable to load built-in crash rules", e);
+            return new CrashRules(Collections.emptyList());
+        }
+    }
+
+    private static CrashRules instance = null;
+
+    /**
+     * The rules used to classify the exit of games, the built-in ones by default.
+     */
+    public static synchronized CrashRules getInstance() {
+        if (instance == null)
+            instance = loadBuiltinRules();
+        return instance;
+    }
+
+    public static synchronized void setInstance(CrashRules instance) {
+        CrashRules.instance = instance;
+    }
+
+    /**
+     * Adds the rules in {@code file}, if it exists, to the built-in rules.
+     */
+    public static void loadExtraRules(File file) {
+        if (!file.isFile())
+            return;
+        try {
+            List<CrashRule> rules = readRules(file);
+            setInstance(getInstance().concat(rules));
+            Logging.LOG.info("Loaded " + rules.size() + " crash rules from " + file);
+        } catch (IOException | JsonParseException e) {
+            Logging.LOG.log(Level.WARNING, "Unable to load crash rules from " + file, e);
+        }
+    }
+}
@@ -19,12 +19,16 @@ package org.jackhuang.hmcl.launch;
 
 import org.jackhuang.hmcl.auth.AuthInfo;
 import org.jackhuang.hmcl.game.*;
+import org.jackhuang.hmcl.task.Schedulers;
 import org.jackhuang.hmcl.util.*;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static org.jackhuang.hmcl.util.Lang.mapOf;
 import static org.jackhuang.hmcl.util.Pair.pair;
@@ -48,6 +52,32 @@ public class DefaultLauncher extends Launcher {
     }
 
     private CommandBuilder generateCommandLine(File nativeFolder) throws IOException {
+        return generateCommandLine(nativeFolder, repository.getActualAssetDirectory(version.getId(), version.getAssetIndex().getId()), getClasspath(), null);
+    }
+
+    /**
+     * @return the absolute paths of existent libraries and the game jar.
+     */
+    private List<String> getClasspath() throws IOException {
+        // Libraries are checked parallelly since there may be hundreds of them in modpacks.
+        List<String> classpath = version.getLibraries().parallelStream()
+                .filter(library -> library.appliesToCurrentEnvironment() && !library.isNative())
+                .map(library -> repository.getLibraryFile(version, library))
+                .filter(File::isFile)
+                .map(File::getAbsolutePath)
+                .collect(Collectors.toCollection(LinkedList::new));
+
+        File jar = repository.getVersionJar(version);
+        if (!jar.isFile())
+            throw new IOException("Minecraft jar does not exist");
+        classpath.add(jar.getAbsolutePath());
+        return classpath;
+    }
+
+    /**
+     * @param loggingConfiguration the log4j2 configuration file that overrides the one of the version, null if absent.
+     */
+    private CommandBuilder generateCommandLine(File nativeFolder, File gameAssets, List<String> classpath, File loggingConfiguration) throws IOException {
         CommandBuilder res = new CommandBuilder();
 
         // Executable
@@ -109,21 +139,19 @@ public class DefaultLauncher extends Launcher {
             res.add("-Dfml.ignorePatchDiscrepancies=true");
         }
 
-        LinkedList<String> classpath = new LinkedList<>();
-        for (Library library : version.getLibraries())
-            if (library.appliesToCurrentEnvironment() && !library.isNative()) {
-                File f = repository.getLibraryFile(version, library);
-                if (f.exists() && f.isFile())
-                    classpath.add(f.getAbsolutePath());
-            }
+        ClassDataSharing classDataSharing = ClassDataSharing.getInstance();
+        if (options.isClassDataSharing() && classDataSharing != null)
+            res.addAll(classDataSharing.getArguments(options.getJava(), version.getId(), classpath, new File(repository.getRunDirectory(version.getId()), "mods")));
 
-        File jar = repository.getVersionJar(version);
-        if (!jar.exists() || !jar.isFile())
-            throw new IOException("Minecraft jar does not exist");
-        classpath.add(jar.getAbsolutePath());
+        if (loggingConfiguration != null) {
+            LoggingInfo logging = version.getLogging().get(DownloadType.CLIENT);
+            String argument = logging == null || StringUtils.isBlank(logging.getArgument()) ? "-Dlog4j.configurationFile=${path}" : logging.getArgument();
+            res.add(argument.replace("${path}", loggingConfiguration.getAbsolutePath()));
+            // Message lookups let a chat message run JNDI lookups on log4j 2.0 to 2.14.1 (CVE-2021-44228).
+            res.add("-Dlog4j2.formatMsgNoLookups=true");
+        }
 
         // Provided Minecraft arguments
-        File gameAssets = repository.getActualAssetDirectory(version.getId(), version.getAssetIndex().getId());
         Map<String, String> configuration = getConfigurations();
         configuration.put("${classpath}", String.join(OperatingSystem.PATH_SEPARATOR, classpath));
         configuration.put("${natives_directory}", nativeFolder.getAbsolutePath());
@@ -239,34 +267,86 @@ public class DefaultLauncher extends Launcher {
 
     @Override
     public ManagedProcess launch() throws IOException, InterruptedException {
-        File nativeFolder = Files.createTempDirectory("minecraft").toFile();
-
-        // To guarantee that when failed to generate launch command line, we will not call pre-launch command
-        List<String> rawCommandLine = generateCommandLine(nativeFolder).asList();
+        // Native libraries and assets are prepared while libraries are being checked.
+        NativesCache nativesCache = NativesCache.getInstance();
+        FutureTask<File> natives = Schedulers.async(() -> timeline.record("natives", () -> {
+            try {
+                if (nativesCache != null)
+                    return nativesCache.extract(repository, version).toFile();
+
+                File nativeFolder = Files.createTempDirectory("minecraft").toFile();
+                decompressNatives(nativeFolder);
+                return nativeFolder;
+            } catch (NotDecompressingNativesException e) {
+                throw e;
+            } catch (IOException e) {
+                throw new NotDecompressingNativesException(e);
+            }
+        }));
+        FutureTask<File> gameAssets = Schedulers.async(() -> timeline.record("assets",
+                () -> repository.getActualAssetDirectory(version.getId(), version.getAssetIndex().getId())));
+
+        // The game uses log4j2 if it provides its log4j2 configuration.
+        StructuredLogParser parser = null;
+        File loggingConfiguration = null;
+        if (options.isStructuredLogging() && listener != null && version.getLogging().containsKey(DownloadType.CLIENT)) {
+            parser = new StructuredLogParser();
+            loggingConfiguration = Files.createTempFile("hmcl-log4j2-", ".xml").toFile();
+            loggingConfiguration.deleteOnExit();
+            FileUtils.writeText(loggingConfiguration, parser.getConfiguration());
+        }
 
-        decompressNatives(nativeFolder);
+        List<String> rawCommandLine;
+        try {
+            List<String> classpath = timeline.record("classpath", this::getClasspath);
+            File nativeFolder = await(natives), assetsFolder = await(gameAssets);
+
+            // To guarantee that when failed to generate launch command line, we will not call pre-launch command
+            File logging = loggingConfiguration;
+            rawCommandLine = timeline.record("command line", () -> generateCommandLine(nativeFolder, assetsFolder, classpath, logging).asList());
+        } finally {
+            natives.cancel(true);
+            gameAssets.cancel(true);
+        }
 
         File runDirectory = repository.getRunDirectory(version.getId());
 
-        if (StringUtils.isNotBlank(options.getPreLaunchCommand()))
+        if (StringUtils.isNotBlank(options.getPreLaunchCommand())) {
+            long begin = System.nanoTime();
             new ProcessBuilder(options.getPreLaunchCommand())
                     .directory(runDirectory).start().waitFor();
-
-        Process process;
-        try {
-            ProcessBuilder builder = new ProcessBuilder(rawCommandLine).directory(runDirectory);
-            builder.environment().put("APPDATA", options.getGameDir().getAbsoluteFile().getParent());
-            process = builder.start();
-        } catch (IOException e) {
-            throw new ProcessCreationException(e);
+            timeline.record("pre-launch command", begin);
         }
 
+        Process process = timeline.record("process creation", () -> {
+            try {
+                ProcessBuilder builder = new ProcessBuilder(rawCommandLine).directory(runDirectory);
+                builder.environment().put("APPDATA", options.getGameDir().getAbsoluteFile().getParent());
+                return builder.start();
+            } catch (IOException e) {
+                throw new ProcessCreationException(e);
+            }
+        });
+        Logging.LOG.info(timeline.toString());
+
         ManagedProcess p = new ManagedProcess(process, rawCommandLine);
         if (listener != null)
-            startMonitors(p, listener, daemon);
+            startMonitors(p, listener, daemon, parser);
         return p;
     }
 
+    private static <T> T await(FutureTask<T> task) throws IOException, InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
     @Override
     public void makeLaunchScript(File scriptFile) throws IOException {
         boolean isWindows = OperatingSystem.WINDOWS == OperatingSystem.CURRENT_OS;
@@ -301,21 +381,18 @@ public class DefaultLauncher extends Launcher {
     }
 
     private void startMonitors(ManagedProcess managedProcess, ProcessListener processListener) {
-        startMonitors(managedProcess, processListener, true);
+        startMonitors(managedProcess, processListener, true, null);
     }
 
-    private void startMonitors(ManagedProcess managedProcess, ProcessListener processListener, boolean isDaemon) {
+    private void startMonitors(ManagedProcess managedProcess, ProcessListener processListener, boolean isDaemon, StructuredLogParser parser) {
         processListener.setProcess(managedProcess);
-        Thread stdout = Lang.thread(new StreamPump(managedProcess.getProcess().getInputStream(), it -> {
-            processListener.onLog(it + OperatingSystem.LINE_SEPARATOR, Optional.ofNullable(Log4jLevel.guessLevel(it)).orElse(Log4jLevel.INFO));
-            managedProcess.addLine(it);
-        }), "stdout-pump", isDaemon);
-        managedProcess.addRelatedThread(stdout);
-        Thread stderr = Lang.thread(new StreamPump(managedProcess.getProcess().getErrorStream(), it -> {
-            processListener.onLog(it + OperatingSystem.LINE_SEPARATOR, Log4jLevel.ERROR);
-            managedProcess.addLine(it);
-        }), "stderr-pump", isDaemon);
-        managedProcess.addRelatedThread(stderr);
-        managedProcess.addRelatedThread(Lang.thread(new ExitWaiter(managedProcess, Arrays.asList(stdout, stderr), processListener::onExit), "exit-waiter", isDaemon));
+        CrashAnalyzer analyzer = new CrashAnalyzer(CrashRules.getInstance());
+        StreamPump.getInstance(isDaemon).register(managedProcess, parser, analyzer, lines -> {
+            for (Pair<String, Log4jLevel> it : lines)
+                processListener.onLog(it.getKey() + OperatingSystem.LINE_SEPARATOR, Optional.ofNullable(it.getValue()).orElse(Log4jLevel.INFO));
+        }, lines -> {
+            for (Pair<String, Log4jLevel> it : lines)
+                processListener.onLog(it.getKey() + OperatingSystem.LINE_SEPARATOR, Log4jLevel.ERROR);
+        }, new ExitWaiter(managedProcess, analyzer, processListener));
     }
 }
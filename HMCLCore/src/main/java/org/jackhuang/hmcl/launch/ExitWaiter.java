@@ -21,57 +21,57 @@ import org.jackhuang.hmcl.event.EventBus;
 import org.jackhuang.hmcl.event.JVMLaunchFailedEvent;
 import org.jackhuang.hmcl.event.ProcessExitedAbnormallyEvent;
 import org.jackhuang.hmcl.event.ProcessStoppedEvent;
-import org.jackhuang.hmcl.util.Log4jLevel;
+import org.jackhuang.hmcl.util.Logging;
 import org.jackhuang.hmcl.util.ManagedProcess;
-import org.jackhuang.hmcl.util.StringUtils;
+import org.jackhuang.hmcl.util.Pair;
 
-import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.function.BiConsumer;
-import java.util.stream.Collectors;
 
 /**
+ * Classifies the exit of the process, after all of its output is pumped by {@link StreamPump}
+ * and matched by {@link CrashAnalyzer}.
  *
  * @author huangyuhui
  */
 final class ExitWaiter implements Runnable {
 
     private final ManagedProcess process;
-    private final Collection<Thread> joins;
-    private final BiConsumer<Integer, ProcessListener.ExitType> watcher;
+    private final CrashAnalyzer analyzer;
+    private final ProcessListener listener;
 
     /**
      * Constructor.
      *
      * @param process the process to wait for
-     * @param watcher the callback that will be called after process stops.
+     * @param analyzer the analyzer that the output of the process is matched by
+     * @param listener the listener that will be notified after process stops.
      */
-    public ExitWaiter(ManagedProcess process, Collection<Thread> joins, BiConsumer<Integer, ProcessListener.ExitType> watcher) {
+    public ExitWaiter(ManagedProcess process, CrashAnalyzer analyzer, ProcessListener listener) {
         this.process = process;
-        this.joins = joins;
-        this.watcher = watcher;
+        this.analyzer = analyzer;
+        this.listener = listener;
     }
 
     @Override
     public void run() {
         try {
             int exitCode = process.getProcess().waitFor();
+            if (process.isStopped())
+                throw new InterruptedException();
 
-            for (Thread thread : joins)
-                thread.join();
+            // LaunchWrapper will catch the exception logged and will exit normally,
+            // so only the rules ignoring exit code apply if the game exits normally.
+            List<CrashRule> rules = analyzer.getFiredRules(exitCode);
+            for (Pair<CrashRule, String> match : analyzer.getMatches())
+                if (rules.contains(match.getKey()))
+                    Logging.LOG.info("Crash rule " + match.getKey().getId() + " fired by: " + match.getValue());
 
-            List<String> errorLines = process.getLines().stream()
-                    .filter(Log4jLevel::guessLogLineError).collect(Collectors.toList());
             ProcessListener.ExitType exitType;
-
-            // LaunchWrapper will catch the exception logged and will exit normally.
-            if (exitCode != 0 && StringUtils.containsOne(errorLines,
-                    "Could not create the Java Virtual Machine.",
-                    "Error occurred during initialization of VM",
-                    "A fatal exception has occurred. Program will exit.")) {
+            if (rules.stream().anyMatch(rule -> rule.getExitType() == ProcessListener.ExitType.JVM_ERROR)) {
                 EventBus.EVENT_BUS.fireEvent(new JVMLaunchFailedEvent(this, process));
                 exitType = ProcessListener.ExitType.JVM_ERROR;
-            } else if (exitCode != 0 || StringUtils.containsOne(errorLines, "Unable to launch")) {
+            } else if (exitCode != 0 || !rules.isEmpty()) {
                 EventBus.EVENT_BUS.fireEvent(new ProcessExitedAbnormallyEvent(this, process));
                 exitType = ProcessListener.ExitType.APPLICATION_ERROR;
             } else
@@ -79,10 +79,9 @@ final class ExitWaiter implements Runnable {
 
             EventBus.EVENT_BUS.fireEvent(new ProcessStoppedEvent(this, process));
 
-            watcher.accept(exitCode, exitType);
+            listener.onExit(exitCode, exitType, rules);
         } catch (InterruptedException e) {
-            watcher.accept(1, ProcessListener.ExitType.INTERRUPTED);
+            listener.onExit(1, ProcessListener.ExitType.INTERRUPTED, Collections.emptyList());
         }
     }
-
 }
@@ -0,0 +1,125 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.launch;
+
+import org.jackhuang.hmcl.util.ExceptionalRunnable;
+import org.jackhuang.hmcl.util.ExceptionalSupplier;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records when each stage of a launch starts and ends, relative to the creation of the timeline,
+ * so that the time spent before the game process starts can be analyzed.
+ * Stages may run concurrently in different threads.
+ *
+ * @author huangyuhui
+ */
+public final class LaunchTimeline {
+
+    private final long startTime = System.nanoTime();
+    private final List<Stage> stages = new ArrayList<>();
+
+    public <T, E extends Exception> T record(String name, ExceptionalSupplier<T, E> supplier) throws E {
+        long begin = System.nanoTime();
+        try {
+            return supplier.get();
+        } finally {
+            record(name, begin);
+        }
+    }
+
+    public <E extends Exception> void record(String name, ExceptionalRunnable<E> runnable) throws E {
+        record(name, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * Records a stage that started at {@code begin}, the value of {@link System#nanoTime()}, and ends now.
+     */
+    public void record(String name, long begin) {
+        add(new Stage(name, Thread.currentThread().getName(), begin - startTime, System.nanoTime() - startTime));
+    }
+
+    private synchronized void add(Stage stage) {
+        stages.add(stage);
+    }
+
+    /**
+     * @return the finished stages, ordered by the time they started.
+     */
+    public synchronized List<Stage> getStages() {
+        List<Stage> result = new ArrayList<>(stages);
+        result.sort(Comparator.comparingLong(Stage::getBegin));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("Launch timeline:");
+        for (Stage stage : getStages())
+            builder.append("\n  ").append(stage);
+        return builder.toString();
+    }
+
+    public static final class Stage {
+        private final String name;
+        private final String thread;
+        private final long begin;
+        private final long end;
+
+        Stage(String name, String thread, long begin, long end) {
+            this.name = name;
+            this.thread = thread;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        /**
+         * @return nanoseconds from the creation of the timeline to the start of this stage.
+         */
+        public long getBegin() {
+            return begin;
+        }
+
+        /**
+         * @return nanoseconds from the creation of the timeline to the end of this stage.
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            long from = TimeUnit.NANOSECONDS.toMillis(begin), to = TimeUnit.NANOSECONDS.toMillis(end);
+            return String.format("%-20s %6dms - %6dms (%dms) [%s]", name, from, to, to - from, thread);
+        }
+    }
+}
@@ -39,6 +39,7 @@ public abstract class Launcher {
     protected final LaunchOptions options;
     protected final ProcessListener listener;
     protected final boolean daemon;
+    protected LaunchTimeline timeline = new LaunchTimeline();
 
     public Launcher(GameRepository repository, String versionId, AuthInfo authInfo, LaunchOptions options) {
         this(repository, versionId, authInfo, options, null);
@@ -59,6 +60,18 @@ public abstract class Launcher {
         version = repository.getResolvedVersion(versionId);
     }
 
+    public LaunchTimeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * @param timeline the timeline that the stages of launching are recorded to,
+     *                 which may have recorded the stages before this launcher is created.
+     */
+    public void setTimeline(LaunchTimeline timeline) {
+        this.timeline = timeline;
+    }
+
     /**
      * @param file the file path.
      */
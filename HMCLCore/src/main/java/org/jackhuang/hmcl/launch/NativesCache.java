@@ -0,0 +1,188 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.launch;
+
+import org.jackhuang.hmcl.game.ExtractRules;
+import org.jackhuang.hmcl.game.GameRepository;
+import org.jackhuang.hmcl.game.Library;
+import org.jackhuang.hmcl.game.Version;
+import org.jackhuang.hmcl.util.DigestUtils;
+import org.jackhuang.hmcl.util.FileUtils;
+import org.jackhuang.hmcl.util.Hex;
+import org.jackhuang.hmcl.util.Logging;
+import org.jackhuang.hmcl.util.StringUtils;
+import org.jackhuang.hmcl.util.VerificationIndex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The directories that native libraries are extracted to, shared by launches and by versions
+ * depending on the same native libraries.
+ *
+ * Each directory is named after the SHA-1 of the contents and extract rules of the native libraries,
+ * so it is extracted only once, and never changed after extracted.
+ *
+ * @author huangyuhui
+ */
+public final class NativesCache {
+
+    private final Path directory;
+
+    public NativesCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Extracts the native libraries of {@code version} if they have not been extracted.
+     *
+     * @param version the <b>resolved</b> version
+     * @return the directory containing the extracted native libraries.
+     */
+    public Path extract(GameRepository repository, Version version) throws IOException {
+        List<Library> natives = new ArrayList<>();
+        List<Path> files = new ArrayList<>();
+        for (Library library : version.getLibraries())
+            if (library.isNative()) {
+                natives.add(library);
+                files.add(repository.getLibraryFile(version, library).toPath());
+            }
+
+        MessageDigest digest = DigestUtils.getDigest("SHA-1");
+        for (int i = 0; i < natives.size(); i++) {
+            digest.update(hash(natives.get(i), files.get(i)).getBytes(UTF_8));
+            digest.update((byte) '\n');
+            for (String exclude : natives.get(i).getExtract().getExclude()) {
+                digest.update(exclude.getBytes(UTF_8));
+                digest.update((byte) '\n');
+            }
+            digest.update((byte) '\n');
+        }
+        VerificationIndex.getInstance().save();
+
+        Path target = directory.resolve(Hex.encodeHex(digest.digest()));
+        if (Files.isDirectory(target))
+            return target;
+
+        long startTime = System.currentTimeMillis();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempDirectory(directory, target.getFileName() + ".");
+        try {
+            extract(natives, files, temp);
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                // Another launch may have extracted the same libraries.
+                if (!Files.isDirectory(target))
+                    throw e;
+            }
+        } finally {
+            if (Files.exists(temp))
+                FileUtils.deleteDirectoryQuietly(temp.toFile());
+        }
+        Logging.LOG.info("Extracted " + natives.size() + " native libraries to " + target + " in " + (System.currentTimeMillis() - startTime) + "ms");
+        return target;
+    }
+
+    /**
+     * @return the SHA-1 of the library file, which is checked by {@link VerificationIndex} if known.
+     */
+    private static String hash(Library library, Path file) throws IOException {
+        String sha1 = library.getDownload().getSha1();
+        if (StringUtils.isNotBlank(sha1) && VerificationIndex.getInstance().verify(file, sha1))
+            return sha1.toLowerCase(Locale.ROOT);
+        return Hex.encodeHex(DigestUtils.digest("SHA-1", file));
+    }
+
+    /**
+     * Extracts the libraries parallelly. If multiple libraries contain the same file,
+     * the one from the latter library is kept, as extracting them in order does.
+     */
+    private static void extract(List<Library> natives, List<Path> files, Path dest) throws IOException {
+        Map<String, Integer> owners = new HashMap<>();
+        for (int i = 0; i < natives.size(); i++) {
+            ExtractRules rules = natives.get(i).getExtract();
+            try (ZipFile zipFile = new ZipFile(files.get(i).toFile())) {
+                Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (!entry.isDirectory() && rules.shouldExtract(entry.getName()))
+                        owners.put(entry.getName(), i);
+                }
+            }
+        }
+
+        try {
+            int[] indexes = new int[natives.size()];
+            for (int i = 0; i < indexes.length; i++)
+                indexes[i] = i;
+            Arrays.stream(indexes).parallel().forEach(i -> {
+                try (ZipFile zipFile = new ZipFile(files.get(i).toFile())) {
+                    Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                    while (entries.hasMoreElements()) {
+                        ZipEntry entry = entries.nextElement();
+                        Integer owner = owners.get(entry.getName());
+                        if (entry.isDirectory() || owner == null || owner != i)
+                            continue;
+
+                        Path destFile = dest.resolve(entry.getName()).normalize();
+                        if (!destFile.startsWith(dest))
+                            throw new IOException("Illegal entry " + entry.getName() + " in " + files.get(i));
+                        Files.createDirectories(destFile.getParent());
+                        try (InputStream input = zipFile.getInputStream(entry)) {
+                            Files.copy(input, destFile, StandardCopyOption.REPLACE_EXISTING);
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static NativesCache instance = null;
+
+    /**
+     * The cache used by {@link DefaultLauncher}.
+     *
+     * @return the natives cache, null if native libraries should be extracted to a new directory for each launch.
+     */
+    public static NativesCache getInstance() {
+        return instance;
+    }
+
+    public static void setInstance(NativesCache instance) {
+        NativesCache.instance = instance;
+    }
+}
@@ -20,6 +20,8 @@ package org.jackhuang.hmcl.launch;
 import org.jackhuang.hmcl.util.Log4jLevel;
 import org.jackhuang.hmcl.util.ManagedProcess;
 
+import java.util.List;
+
 /**
  *
  * @author huangyuhui
@@ -49,6 +51,16 @@ public interface ProcessListener {
      */
     void onExit(int exitCode, ExitType exitType);
 
+    /**
+     * Called when the game process stops.
+     *
+     * @param exitCode the exit code
+     * @param rules the crash rules fired by the output of the game, in firing order.
+     */
+    default void onExit(int exitCode, ExitType exitType, List<CrashRule> rules) {
+        onExit(exitCode, exitType);
+    }
+
     enum ExitType {
         JVM_ERROR,
         APPLICATION_ERROR,
@@ -18,50 +18,362 @@
 package org.jackhuang.hmcl.launch;
 
 import org.jackhuang.hmcl.util.Constants;
+import org.jackhuang.hmcl.util.Lang;
+import org.jackhuang.hmcl.util.Log4jLevel;
 import org.jackhuang.hmcl.util.Logging;
+import org.jackhuang.hmcl.util.ManagedProcess;
+import org.jackhuang.hmcl.util.Pair;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 
+import static org.jackhuang.hmcl.util.Pair.pair;
+
 /**
- * Pump the given input stream.
+ * Pumps the standard output and error of all managed processes.
+ *
+ * Pipes of processes cannot be selected in Java, so a single thread polls the pipes of all registered processes,
+ * reads whatever is available in large chunks and splits it into lines, and sleeps a little longer, up to
+ * {@link #MAX_IDLE_MILLIS}, while no pipe has output. The sleep is kept short, since a game writing more than
+ * the pipe buffer holds is blocked until the pipe is read.
+ * Each line is classified by {@link Log4jLevel#guessLevel}, or by {@link StructuredLogParser} if present, and stored in {@link ManagedProcess}
+ * and matched by {@link CrashAnalyzer} right away,
+ * and handed to the listener of the pipe with its level in batches
+ * on the dispatcher thread of the process, so that a slow listener of one process never delays another.
+ * The lines waiting for a listener are bounded, the oldest ones are dropped
+ * if the listener cannot keep up, so that a slow listener never blocks the game writing to the pipe,
+ * and the listener is told how many lines are dropped by a warning line in place of them.
  *
  * @author huangyuhui
  */
 final class StreamPump implements Runnable {
 
-    private final InputStream inputStream;
-    private final Consumer<String> callback;
+    private final boolean daemon;
+    private final Queue<Source> registered = new ConcurrentLinkedQueue<>();
+    private final List<Source> sources = new LinkedList<>();
+    private Thread thread = null;
+
+    private StreamPump(boolean daemon) {
+        this.daemon = daemon;
+    }
 
-    public StreamPump(InputStream inputStream) {
-        this(inputStream, s -> {
+    /**
+     * Creates the dispatcher of a process, which hands lines of both pipes and then the exit to listeners in order.
+     */
+    private ExecutorService newDispatcher() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "stream-dispatcher");
+            thread.setDaemon(daemon);
+            return thread;
         });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
-    public StreamPump(InputStream inputStream, Consumer<String> callback) {
-        this.inputStream = inputStream;
-        this.callback = callback;
+    /**
+     * Starts pumping the output of {@code process}.
+     *
+     * @param stdout the listener of lines from standard output.
+     * @param stderr the listener of lines from standard error.
+     * @param onExit called after the process exits and all lines are handed to listeners.
+     */
+    public void register(ManagedProcess process, Consumer<List<Pair<String, Log4jLevel>>> stdout, Consumer<List<Pair<String, Log4jLevel>>> stderr, Runnable onExit) {
+        register(process, null, null, stdout, stderr, onExit);
+    }
+
+    /**
+     * Starts pumping the output of {@code process}.
+     *
+     * @param parser the parser of standard output if the game is launched with its log4j2 configuration, null if not.
+     * @param analyzer the analyzer that all lines are matched by, null if not needed.
+     * @param stdout the listener of lines from standard output.
+     * @param stderr the listener of lines from standard error.
+     * @param onExit called after the process exits and all lines are handed to listeners.
+     */
+    public synchronized void register(ManagedProcess process, StructuredLogParser parser, CrashAnalyzer analyzer, Consumer<List<Pair<String, Log4jLevel>>> stdout, Consumer<List<Pair<String, Log4jLevel>>> stderr, Runnable onExit) {
+        ExecutorService dispatcher = newDispatcher();
+        registered.add(new Source(process,
+                new Pipe(process, process.getProcess().getInputStream(), parser, analyzer, dispatcher, stdout),
+                new Pipe(process, process.getProcess().getErrorStream(), null, analyzer, dispatcher, stderr),
+                dispatcher, onExit));
+        if (thread == null)
+            thread = Lang.thread(this, "stream-pump", daemon);
     }
 
     @Override
     public void run() {
-        try (BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream, Constants.SYSTEM_CHARSET))) {
-            String line;
-            while ((line = bufferedReader.readLine()) != null) {
-                if (Thread.currentThread().isInterrupted()) {
-                    Thread.currentThread().interrupt();
-                    break;
+        int idle = 0;
+        while (true) {
+            synchronized (this) {
+                Source source;
+                while ((source = registered.poll()) != null)
+                    sources.add(source);
+                if (sources.isEmpty()) {
+                    // No process is running, the thread will be started again when a process is registered.
+                    thread = null;
+                    return;
+                }
+            }
+
+            boolean read = false;
+            for (Iterator<Source> iterator = sources.iterator(); iterator.hasNext(); ) {
+                Source source = iterator.next();
+                // Checked before reading, so that all output written before exit has been read once the pipe is empty.
+                boolean exited = !source.process.getProcess().isAlive();
+                read |= source.stdout.pump(exited);
+                read |= source.stderr.pump(exited);
+
+                if (source.stdout.finished && source.stderr.finished) {
+                    iterator.remove();
+                    // Runs after the lines of the process that are queued in the dispatcher.
+                    source.dispatcher.execute(source.onExit);
+                    source.dispatcher.shutdown();
+                }
+            }
+
+            if (read)
+                idle = 0;
+            else {
+                idle = Math.min(Math.max(idle * 2, 1), MAX_IDLE_MILLIS);
+                try {
+                    Thread.sleep(idle);
+                } catch (InterruptedException ignored) {
+                    // The pump is shared by all processes and stops only when no process is running.
+                }
+            }
+        }
+    }
+
+    private static final class Source {
+        private final ManagedProcess process;
+        private final Pipe stdout;
+        private final Pipe stderr;
+        private final ExecutorService dispatcher;
+        private final Runnable onExit;
+
+        Source(ManagedProcess process, Pipe stdout, Pipe stderr, ExecutorService dispatcher, Runnable onExit) {
+            this.process = process;
+            this.stdout = stdout;
+            this.stderr = stderr;
+            this.dispatcher = dispatcher;
+            this.onExit = onExit;
+        }
+    }
+
+    private final class Pipe {
+        private final ManagedProcess process;
+        private final InputStream input;
+        private final StructuredLogParser parser;
+        private final CrashAnalyzer analyzer;
+        private final ExecutorService dispatcher;
+        private final Consumer<List<Pair<String, Log4jLevel>>> listener;
+        private final CharsetDecoder decoder = Constants.SYSTEM_CHARSET.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        private final StringBuilder partial = new StringBuilder();
+        private boolean finished = false;
+
+        // Guarded by queue
+        private final ArrayDeque<Pair<String, Log4jLevel>> queue = new ArrayDeque<>();
+        private int dropped = 0;
+        private boolean scheduled = false;
+
+        Pipe(ManagedProcess process, InputStream input, StructuredLogParser parser, CrashAnalyzer analyzer, ExecutorService dispatcher, Consumer<List<Pair<String, Log4jLevel>>> listener) {
+            this.process = process;
+            this.input = input;
+            this.parser = parser;
+            this.analyzer = analyzer;
+            this.dispatcher = dispatcher;
+            this.listener = listener;
+        }
+
+        /**
+         * Reads the available output without blocking.
+         *
+         * @param exited true if the process has exited, then the pipe is finished once it is empty.
+         * @return true if anything is read.
+         */
+        boolean pump(boolean exited) {
+            if (finished)
+                return false;
+
+            try {
+                int available = input.available();
+                if (available > 0) {
+                    int n = input.read(bytes.array(), bytes.position(), Math.min(available, bytes.remaining()));
+                    if (n > 0) {
+                        bytes.position(bytes.position() + n);
+                        decode(false);
+                        return true;
+                    }
+                    exited |= n < 0;
+                }
+            } catch (IOException e) {
+                Logging.LOG.log(Level.SEVERE, "An error occurred when reading stream", e);
+                exited = true;
+            }
+
+            if (exited)
+                finish();
+            return false;
+        }
+
+        private void finish() {
+            finished = true;
+            decode(true);
+            if (partial.length() > 0)
+                offer(Collections.singletonList(takeLine()));
+            if (parser != null) {
+                List<Pair<String, Log4jLevel>> lines = new ArrayList<>();
+                parser.finish(lines);
+                offerClassified(lines);
+            }
+
+            try {
+                input.close();
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void decode(boolean endOfInput) {
+            List<String> lines = new ArrayList<>();
+            bytes.flip();
+            CoderResult result;
+            do {
+                result = decoder.decode(bytes, chars, endOfInput);
+                split(lines);
+            } while (result.isOverflow());
+            bytes.compact();
+
+            if (endOfInput) {
+                decoder.flush(chars);
+                split(lines);
+            }
+
+            if (!lines.isEmpty())
+                offer(lines);
+        }
+
+        /**
+         * Splits the decoded characters into lines. A line is copied only once unless it spans multiple reads.
+         */
+        private void split(List<String> lines) {
+            char[] array = chars.array();
+            int length = chars.position(), start = 0;
+            for (int i = 0; i < length; i++) {
+                if (array[i] != '\n')
+                    continue;
+
+                if (partial.length() == 0) {
+                    int end = i > start && array[i - 1] == '\r' ? i - 1 : i;
+                    lines.add(new String(array, start, end - start));
+                } else {
+                    partial.append(array, start, i - start);
+                    lines.add(takeLine());
                 }
+                start = i + 1;
+            }
+            partial.append(array, start, length - start);
+            chars.clear();
+        }
+
+        private String takeLine() {
+            int length = partial.length();
+            if (length > 0 && partial.charAt(length - 1) == '\r')
+                partial.setLength(length - 1);
+            String line = partial.toString();
+            partial.setLength(0);
+            return line;
+        }
 
-                callback.accept(line);
+        private void offer(List<String> lines) {
+            // Each line is classified only once, for both the store and the listener.
+            List<Pair<String, Log4jLevel>> classified = new ArrayList<>(lines.size());
+            for (String line : lines)
+                if (parser != null)
+                    parser.parse(line, classified);
+                else
+                    classified.add(pair(line, Log4jLevel.guessLevel(line)));
+            offerClassified(classified);
+        }
+
+        private void offerClassified(List<Pair<String, Log4jLevel>> classified) {
+            if (classified.isEmpty())
+                return;
+            for (Pair<String, Log4jLevel> line : classified) {
+                process.addLine(line.getKey(), line.getValue());
+                if (analyzer != null)
+                    analyzer.accept(line.getKey(), line.getValue());
+            }
+
+            synchronized (queue) {
+                queue.addAll(classified);
+                while (queue.size() > QUEUE_CAPACITY) {
+                    queue.removeFirst();
+                    dropped++;
+                }
+                if (scheduled)
+                    return;
+                scheduled = true;
+            }
+            dispatcher.execute(this::deliver);
+        }
+
+        private void deliver() {
+            while (true) {
+                List<Pair<String, Log4jLevel>> batch;
+                int droppedLines;
+                synchronized (queue) {
+                    if (queue.isEmpty()) {
+                        scheduled = false;
+                        return;
+                    }
+                    batch = new ArrayList<>(queue);
+                    queue.clear();
+                    droppedLines = dropped;
+                    dropped = 0;
+                }
+
+                if (droppedLines > 0) {
+                    Logging.LOG.warning(droppedLines + " lines of game output are not passed to the listener since it cannot keep up");
+                    batch.add(0, pair("[HMCL] " + droppedLines + " lines of output are omitted", Log4jLevel.WARN));
+                }
+                try {
+                    listener.accept(batch);
+                } catch (RuntimeException e) {
+                    Logging.LOG.log(Level.WARNING, "An error occurred when handling game output", e);
+                }
             }
-        } catch (IOException e) {
-            Logging.LOG.log(Level.SEVERE, "An error occurred when reading stream", e);
         }
     }
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int QUEUE_CAPACITY = 16 * 1024;
+    private static final int MAX_IDLE_MILLIS = 4;
+
+    private static final StreamPump DAEMON = new StreamPump(true);
+    private static final StreamPump NON_DAEMON = new StreamPump(false);
+
+    /**
+     * @param daemon false if the JVM should not exit until all registered processes exit,
+     *               so that the processes will not be blocked writing to the pipe.
+     */
+    public static StreamPump getInstance(boolean daemon) {
+        return daemon ? DAEMON : NON_DAEMON;
+    }
 }
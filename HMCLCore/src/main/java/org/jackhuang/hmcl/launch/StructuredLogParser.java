@@ -0,0 +1,152 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.launch;
+
+import org.jackhuang.hmcl.util.Hex;
+import org.jackhuang.hmcl.util.Log4jLevel;
+import org.jackhuang.hmcl.util.Pair;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.jackhuang.hmcl.util.Pair.pair;
+
+/**
+ * Parses the standard output of a game launched with the log4j2 configuration from {@link #getConfiguration()},
+ * so that levels of log events are known exactly instead of being guessed from text.
+ *
+ * Each event is printed as {@code <token>|<time>\t<level>\t<thread>\t<logger>\t<message>},
+ * followed by the remaining lines of the message and the throwable, and then a line ending with {@code ~<token>}.
+ * The token is random for each launch, so that it never appears in the output by chance.
+ * Lines out of events, which are printed before log4j is initialized, are classified by {@link Log4jLevel#guessLevel}.
+ *
+ * The configuration replaces the one provided by the version, e.g. client-1.12.xml, whose file appender
+ * writing logs/latest.log is reproduced here. Other customizations of the version's configuration are not kept.
+ *
+ * @author huangyuhui
+ */
+final class StructuredLogParser {
+
+    private final String token = "HMCL-" + Hex.encodeHex(randomBytes());
+    private final String header = token + "|";
+    // Not a letter, otherwise it would be parsed as a part of the conversion name of "%xEx".
+    private final String end = "~" + token;
+
+    private String[] fields;
+    private final List<String> lines = new ArrayList<>();
+
+    /**
+     * @return the log4j2 configuration that the game should be launched with.
+     */
+    public String getConfiguration() {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+                "<Configuration status=\"WARN\">\n" +
+                "    <Appenders>\n" +
+                "        <Console name=\"SysOut\" target=\"SYSTEM_OUT\">\n" +
+                "            <PatternLayout pattern=\"" + header + "%d{" + TIME_PATTERN + "}&#9;%level&#9;%t&#9;%c&#9;%msg{nolookups}%n%xEx" + end + "%n\"/>\n" +
+                "        </Console>\n" +
+                "        <RollingRandomAccessFile name=\"File\" fileName=\"logs/latest.log\" filePattern=\"logs/%d{yyyy-MM-dd}-%i.log.gz\">\n" +
+                "            <PatternLayout pattern=\"[%d{HH:mm:ss}] [%t/%level]: %msg{nolookups}%n\"/>\n" +
+                "            <Policies>\n" +
+                "                <TimeBasedTriggeringPolicy/>\n" +
+                "                <OnStartupTriggeringPolicy/>\n" +
+                "            </Policies>\n" +
+                "        </RollingRandomAccessFile>\n" +
+                "    </Appenders>\n" +
+                "    <Loggers>\n" +
+                "        <Root level=\"info\">\n" +
+                "            <filters>\n" +
+                "                <MarkerFilter marker=\"NETWORK_PACKETS\" onMatch=\"DENY\" onMismatch=\"NEUTRAL\"/>\n" +
+                "            </filters>\n" +
+                "            <AppenderRef ref=\"SysOut\"/>\n" +
+                "            <AppenderRef ref=\"File\"/>\n" +
+                "        </Root>\n" +
+                "    </Loggers>\n" +
+                "</Configuration>\n";
+    }
+
+    /**
+     * Parses a line of standard output.
+     *
+     * @param out the lines to show and their levels, which are added once an event is complete.
+     */
+    public void parse(String line, List<Pair<String, Log4jLevel>> out) {
+        if (line.startsWith(header)) {
+            // The end of the last event is missing.
+            if (fields != null)
+                complete(out);
+
+            String[] split = line.substring(header.length()).split("\t", 5);
+            if (split.length == 5) {
+                fields = split;
+                return;
+            }
+        }
+
+        if (fields == null) {
+            out.add(pair(line, Log4jLevel.guessLevel(line)));
+        } else if (line.endsWith(end)) {
+            if (line.length() > end.length())
+                lines.add(line.substring(0, line.length() - end.length()));
+            complete(out);
+        } else
+            lines.add(line);
+    }
+
+    /**
+     * Completes the event whose end is not printed, called when the output ends.
+     */
+    public void finish(List<Pair<String, Log4jLevel>> out) {
+        if (fields != null)
+            complete(out);
+    }
+
+    private void complete(List<Pair<String, Log4jLevel>> out) {
+        String thread = fields[2], logger = fields[3];
+        Log4jLevel level = parseLevel(fields[1]);
+        // Minecraft redirects System.err to the logger STDERR.
+        if ("STDERR".equals(logger) && level == Log4jLevel.INFO)
+            level = Log4jLevel.ERROR;
+
+        // The short time is taken from "yyyy-MM-dd HH:mm:ss.SSS".
+        String time = fields[0].length() >= 19 ? fields[0].substring(11, 19) : fields[0];
+        out.add(pair("[" + time + "] [" + thread + "/" + fields[1] + "] [" + logger + "]: " + fields[4], level));
+        for (String line : lines)
+            out.add(pair(line, level));
+
+        fields = null;
+        lines.clear();
+    }
+
+    private static Log4jLevel parseLevel(String level) {
+        try {
+            return Log4jLevel.valueOf(level);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static byte[] randomBytes() {
+        byte[] bytes = new byte[8];
+        new SecureRandom().nextBytes(bytes);
+        return bytes;
+    }
+
+    private static final String TIME_PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+}
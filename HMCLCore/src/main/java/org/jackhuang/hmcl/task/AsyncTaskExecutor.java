@@ -0,0 +1,286 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.task;
+
+import org.jackhuang.hmcl.util.ExceptionalRunnable;
+import org.jackhuang.hmcl.util.Logging;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * A task executor that walks the task graph with completion callbacks.
+ *
+ * Unlike {@link TaskExecutor}, no thread is blocked while waiting for
+ * dependents or dependencies of a task. A task only occupies a thread of
+ * its {@link Task#getScheduler()} while {@link Task#execute()} is running,
+ * so that thousands of tasks can be executed on the few threads
+ * of {@link DownloadScheduler}.
+ *
+ * The task graph is walked on the scheduler of the executor, see {@link #setScheduler(Scheduler)},
+ * never on the thread that a task is executed on, which may be the UI thread.
+ *
+ * The {@link TaskListener} contract is the same as {@link TaskExecutor}.
+ *
+ * @author huangyuhui
+ */
+public final class AsyncTaskExecutor extends TaskExecutor {
+
+    private final Map<Future<?>, Invoker> running = new ConcurrentHashMap<>();
+
+    public AsyncTaskExecutor(Task task) {
+        super(task);
+    }
+
+    @Override
+    public TaskExecutor start() {
+        taskListeners.forEach(TaskListener::onStart);
+        dispatch(() -> executeTasks(Collections.singleton(firstTask), flag -> taskListeners.forEach(it -> it.onStop(flag, this))));
+        return this;
+    }
+
+    @Override
+    public boolean test() {
+        taskListeners.forEach(TaskListener::onStart);
+        AtomicBoolean flag = new AtomicBoolean(true);
+        CountDownLatch latch = new CountDownLatch(1);
+        dispatch(() -> executeTasks(Collections.singleton(firstTask), success -> {
+            flag.set(success);
+            taskListeners.forEach(it -> it.onStop(success, this));
+            latch.countDown();
+        }));
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return flag.get();
+    }
+
+    /**
+     * Cancel the subscription ant interrupt all tasks.
+     * Tasks that have not started yet will be failed immediately.
+     */
+    @Override
+    public void cancel() {
+        List<Invoker> invokers;
+        synchronized (this) {
+            canceled = true;
+            invokers = new ArrayList<>(running.size());
+            for (Map.Entry<Future<?>, Invoker> entry : running.entrySet()) {
+                entry.getKey().cancel(true);
+                invokers.add(entry.getValue());
+            }
+        }
+
+        // Continuations are dispatched to the scheduler, not run on the caller's thread with the lock held.
+        for (Invoker invoker : invokers)
+            invoker.complete(new InterruptedException());
+    }
+
+    /**
+     * Runs the continuation of the task graph on the scheduler of this executor.
+     */
+    private void dispatch(Runnable continuation) {
+        try {
+            scheduler.schedule(continuation::run);
+        } catch (RejectedExecutionException e) {
+            // The scheduler has been shut down, the continuation must still run to report the failure.
+            continuation.run();
+        }
+    }
+
+    /**
+     * Execute the given tasks parallelly.
+     *
+     * @param callback invoked exactly once, with true if all tasks succeeded.
+     */
+    private void executeTasks(Collection<? extends Task> tasks, Consumer<Boolean> callback) {
+        if (tasks.isEmpty()) {
+            callback.accept(true);
+            return;
+        }
+
+        totTask.addAndGet(tasks.size());
+        AtomicBoolean success = new AtomicBoolean(true);
+        AtomicInteger remaining = new AtomicInteger(tasks.size());
+        Consumer<Boolean> join = flag -> {
+            if (!flag)
+                success.set(false);
+            if (remaining.decrementAndGet() == 0)
+                callback.accept(success.get() && !canceled);
+        };
+
+        for (Task task : tasks)
+            executeTask(task, join);
+    }
+
+    private void executeTask(Task task, Consumer<Boolean> callback) {
+        if (canceled) {
+            task.setState(Task.TaskState.FAILED);
+            callback.accept(false);
+            return;
+        }
+
+        task.setState(Task.TaskState.READY);
+
+        if (task.getSignificance().shouldLog())
+            Logging.LOG.log(Level.FINE, "Executing task: " + task.getName());
+
+        taskListeners.forEach(it -> it.onReady(task));
+
+        executeTasks(task.getDependents(), doDependentsSucceeded -> {
+            if (!doDependentsSucceeded && task.isRelyingOnDependents() || canceled) {
+                finish(task, false, callback);
+                return;
+            }
+
+            if (doDependentsSucceeded)
+                task.setDependentsSucceeded();
+
+            task.setVariables(variables);
+            task.setExecutor(this);
+            task.setState(Task.TaskState.RUNNING);
+            taskListeners.forEach(it -> it.onRunning(task));
+
+            Invoker invoker = new Invoker(task, callback);
+            try {
+                invoker.future = task.getScheduler().schedule(invoker);
+                if (invoker.future != null) {
+                    running.put(invoker.future, invoker);
+                    // The task may have finished before we registered it.
+                    if (invoker.done.get())
+                        running.remove(invoker.future);
+                }
+            } catch (RejectedExecutionException e) {
+                invoker.complete(e);
+            }
+        });
+    }
+
+    private void onExecuted(Task task, Exception exception, Consumer<Boolean> callback) {
+        task.setState(Task.TaskState.EXECUTED);
+
+        if (exception != null) {
+            onFailed(task, exception, callback);
+            return;
+        }
+
+        if (task instanceof TaskResult<?>) {
+            TaskResult<?> taskResult = (TaskResult<?>) task;
+            variables.set(taskResult.getId(), taskResult.getResult());
+        }
+
+        executeTasks(task.getDependencies(), doDependenciesSucceeded -> {
+            if (!doDependenciesSucceeded && task.isRelyingOnDependencies()) {
+                Logging.LOG.severe("Subtasks failed for " + task.getName());
+                finish(task, false, callback);
+                return;
+            }
+
+            if (task.getSignificance().shouldLog())
+                Logging.LOG.log(Level.FINER, "Task finished: " + task.getName());
+
+            task.onDone().fireEvent(new TaskEvent(this, task, false));
+            taskListeners.forEach(it -> it.onFinished(task));
+            finish(task, true, callback);
+        });
+    }
+
+    private void onFailed(Task task, Exception exception, Consumer<Boolean> callback) {
+        if (exception instanceof InterruptedException) {
+            if (task.getSignificance().shouldLog())
+                Logging.LOG.log(Level.FINE, "Task aborted: " + task.getName());
+            task.onDone().fireEvent(new TaskEvent(this, task, true));
+            taskListeners.forEach(it -> it.onFailed(task, exception));
+        } else if (!(exception instanceof SilentException) && !(exception instanceof RejectedExecutionException)) {
+            task.setLastException(exception);
+            lastException = exception;
+            variables.set(LAST_EXCEPTION_ID, exception);
+            if (task.getSignificance().shouldLog())
+                Logging.LOG.log(Level.FINE, "Task failed: " + task.getName(), exception);
+            task.onDone().fireEvent(new TaskEvent(this, task, true));
+            taskListeners.forEach(it -> it.onFailed(task, exception));
+        }
+        finish(task, false, callback);
+    }
+
+    private void finish(Task task, boolean flag, Consumer<Boolean> callback) {
+        task.setVariables(null);
+        task.setExecutor(null);
+        task.setState(flag ? Task.TaskState.SUCCEEDED : Task.TaskState.FAILED);
+        callback.accept(flag);
+    }
+
+    /**
+     * Runs {@link Task#execute()} on the scheduler of the task, and continues
+     * walking the task graph on the scheduler of the executor once it is done.
+     */
+    private class Invoker implements ExceptionalRunnable<Exception> {
+
+        private final Task task;
+        private final Consumer<Boolean> callback;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private volatile Future<?> future;
+
+        public Invoker(Task task, Consumer<Boolean> callback) {
+            this.task = task;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            Exception exception = null;
+            try {
+                task.execute();
+            } catch (Exception e) {
+                exception = e;
+            } catch (Throwable e) {
+                exception = new ExecutionException(e);
+            }
+            complete(exception);
+        }
+
+        /**
+         * Ensures the continuation of the task runs only once,
+         * since a task can be completed either by itself or by {@link #cancel()}.
+         */
+        void complete(Exception exception) {
+            if (!done.compareAndSet(false, true))
+                return;
+            if (future != null)
+                running.remove(future);
+
+            dispatch(() -> onExecuted(task, exception, callback));
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.task;
+
+import org.jackhuang.hmcl.util.ExceptionalRunnable;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The scheduler that runs network transfers.
+ *
+ * Jobs are keyed by the host of the URL being downloaded and by the group
+ * (usually the {@link TaskExecutor}) that submits them.
+ * At most {@link #getMaxConnections()} jobs run at the same time,
+ * and at most {@link #getMaxConnectionsPerHost()} of them against the same host.
+ * Hosts, and groups of the same host, are served in round-robin order,
+ * so a small metadata request will not wait for thousands of asset objects.
+ *
+ * @author huangyuhui
+ */
+public final class DownloadScheduler {
+
+    private final ExecutorService executorService;
+    private final Map<String, Host> hosts = new HashMap<>();
+    private final Deque<Host> pendingHosts = new ArrayDeque<>();
+    private int maxConnections;
+    private int maxConnectionsPerHost;
+    private int activeConnections = 0;
+
+    DownloadScheduler(ExecutorService executorService, int maxConnections, int maxConnectionsPerHost) {
+        this.executorService = executorService;
+        setMaxConnections(maxConnections);
+        setMaxConnectionsPerHost(maxConnectionsPerHost);
+    }
+
+    public synchronized int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections < 1)
+            throw new IllegalArgumentException("maxConnections must be positive");
+        synchronized (this) {
+            this.maxConnections = maxConnections;
+        }
+        dispatch();
+    }
+
+    public synchronized int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        if (maxConnectionsPerHost < 1)
+            throw new IllegalArgumentException("maxConnectionsPerHost must be positive");
+        synchronized (this) {
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+        }
+        dispatch();
+    }
+
+    /**
+     * The scheduler that submits jobs to this download scheduler.
+     *
+     * @param host the host that the job connects to.
+     * @param group the group that jobs are round-robined among, null if the job belongs to no group.
+     */
+    public Scheduler forHost(String host, Object group) {
+        return new HostScheduler(host == null ? "" : host, group);
+    }
+
+    private Future<?> submit(String hostName, Object group, ExceptionalRunnable<?> block) {
+        if (executorService.isShutdown() || executorService.isTerminated())
+            return Schedulers.NONE.schedule(block);
+
+        FutureTask<?> job = new FutureTask<>(block.toCallable());
+        synchronized (this) {
+            Host host = hosts.computeIfAbsent(hostName, Host::new);
+            if (!host.hasJobs())
+                pendingHosts.add(host);
+            host.offer(group, job);
+        }
+        dispatch();
+        return job;
+    }
+
+    private void dispatch() {
+        List<Runnable> started = new LinkedList<>();
+        synchronized (this) {
+            int blocked = 0;
+            while (activeConnections < maxConnections && blocked < pendingHosts.size()) {
+                Host host = pendingHosts.poll();
+                if (host.activeConnections >= maxConnectionsPerHost) {
+                    pendingHosts.add(host);
+                    blocked++;
+                    continue;
+                }
+
+                FutureTask<?> job = host.poll();
+                if (host.hasJobs())
+                    pendingHosts.add(host);
+
+                if (job != null && !job.isCancelled()) {
+                    blocked = 0;
+                    host.activeConnections++;
+                    activeConnections++;
+                    started.add(() -> {
+                        try {
+                            job.run();
+                        } finally {
+                            release(host);
+                        }
+                    });
+                } else if (host.activeConnections == 0 && !host.hasJobs())
+                    hosts.remove(host.name, host);
+            }
+        }
+
+        for (Runnable runnable : started) {
+            try {
+                executorService.execute(runnable);
+            } catch (RejectedExecutionException e) {
+                runnable.run();
+            }
+        }
+    }
+
+    private void release(Host host) {
+        synchronized (this) {
+            host.activeConnections--;
+            activeConnections--;
+            if (host.activeConnections == 0 && !host.hasJobs())
+                hosts.remove(host.name, host);
+        }
+        dispatch();
+    }
+
+    void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    private static final class Host {
+        private final String name;
+        private final Map<Object, Queue<FutureTask<?>>> groups = new HashMap<>();
+        private final Queue<Object> groupOrder = new ArrayDeque<>();
+        private int activeConnections = 0;
+
+        Host(String name) {
+            this.name = name;
+        }
+
+        boolean hasJobs() {
+            return !groupOrder.isEmpty();
+        }
+
+        void offer(Object group, FutureTask<?> job) {
+            Object key = group == null ? this : group;
+            Queue<FutureTask<?>> queue = groups.get(key);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                groups.put(key, queue);
+                groupOrder.add(key);
+            }
+            queue.add(job);
+        }
+
+        FutureTask<?> poll() {
+            Object key = groupOrder.poll();
+            if (key == null)
+                return null;
+            Queue<FutureTask<?>> queue = groups.get(key);
+            FutureTask<?> job = queue.poll();
+            if (queue.isEmpty())
+                groups.remove(key);
+            else
+                groupOrder.add(key);
+            return job;
+        }
+    }
+
+    private final class HostScheduler extends Scheduler {
+        private final String host;
+        private final Object group;
+
+        HostScheduler(String host, Object group) {
+            this.host = host;
+            this.group = group;
+        }
+
+        @Override
+        public Future<?> schedule(ExceptionalRunnable<?> block) {
+            return submit(host, group, block);
+        }
+    }
+}
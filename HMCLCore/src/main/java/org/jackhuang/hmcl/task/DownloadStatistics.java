@@ -0,0 +1,120 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.task;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolling statistics of latency, throughput and errors of each host,
+ * collected from finished downloads and probes.
+ *
+ * @author huangyuhui
+ */
+public final class DownloadStatistics {
+
+    private final Map<String, HostStatistics> hosts = new ConcurrentHashMap<>();
+
+    public void recordSuccess(URL url, long bytes, long nanos) {
+        getHost(url).recordSuccess(bytes, nanos);
+    }
+
+    public void recordFailure(URL url) {
+        getHost(url).recordFailure();
+    }
+
+    /**
+     * Records the time of a request whose response body is negligible, i.e. a probe.
+     */
+    public void recordLatency(URL url, long nanos) {
+        getHost(url).recordSuccess(0, nanos);
+    }
+
+    /**
+     * The expected seconds to download a file of {@link #REFERENCE_SIZE} bytes from {@code url}.
+     * Lower is better, and {@link Double#POSITIVE_INFINITY} if the host keeps failing.
+     */
+    public double getExpectedTime(URL url) {
+        HostStatistics host = hosts.get(url.getHost());
+        return host == null ? UNKNOWN_LATENCY + REFERENCE_SIZE / UNKNOWN_THROUGHPUT : host.getExpectedTime();
+    }
+
+    public boolean isHealthy(URL url) {
+        HostStatistics host = hosts.get(url.getHost());
+        return host == null || host.isHealthy();
+    }
+
+    private HostStatistics getHost(URL url) {
+        return hosts.computeIfAbsent(url.getHost(), key -> new HostStatistics());
+    }
+
+    private static final class HostStatistics {
+        private double latency = UNKNOWN_LATENCY; // seconds
+        private double throughput = UNKNOWN_THROUGHPUT; // bytes per second
+        private double errorRate = 0;
+        private int consecutiveFailures = 0;
+        private long lastFailure = 0;
+
+        synchronized void recordSuccess(long bytes, long nanos) {
+            double seconds = Math.max(nanos, 1) / 1e9;
+            // Small responses are dominated by round trips.
+            if (bytes < REFERENCE_SIZE)
+                latency = average(latency, seconds);
+            else
+                throughput = average(throughput, bytes / seconds);
+            errorRate = average(errorRate, 0);
+            consecutiveFailures = 0;
+        }
+
+        synchronized void recordFailure() {
+            errorRate = average(errorRate, 1);
+            consecutiveFailures++;
+            lastFailure = System.currentTimeMillis();
+        }
+
+        synchronized boolean isHealthy() {
+            return consecutiveFailures < MAX_CONSECUTIVE_FAILURES
+                    || System.currentTimeMillis() - lastFailure > UNHEALTHY_PERIOD;
+        }
+
+        synchronized double getExpectedTime() {
+            if (!isHealthy())
+                return Double.POSITIVE_INFINITY;
+            return (latency + REFERENCE_SIZE / throughput) * (1 + 4 * errorRate);
+        }
+
+        private static double average(double average, double sample) {
+            return average * (1 - ALPHA) + sample * ALPHA;
+        }
+    }
+
+    public static final DownloadStatistics INSTANCE = new DownloadStatistics();
+
+    /**
+     * The file size that scores of hosts are compared with.
+     */
+    public static final long REFERENCE_SIZE = 256 * 1024;
+
+    private static final double ALPHA = 0.2;
+    private static final double UNKNOWN_LATENCY = 0.5;
+    private static final double UNKNOWN_THROUGHPUT = 1024 * 1024;
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+    private static final long UNHEALTHY_PERIOD = TimeUnit.MINUTES.toMillis(1);
+}
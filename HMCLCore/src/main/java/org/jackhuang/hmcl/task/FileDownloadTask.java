@@ -19,20 +19,44 @@ package org.jackhuang.hmcl.task;
 
 import org.jackhuang.hmcl.event.EventManager;
 import org.jackhuang.hmcl.event.FailedEvent;
+import org.jackhuang.hmcl.util.CacheRepository;
 import org.jackhuang.hmcl.util.ChecksumMismatchException;
+import org.jackhuang.hmcl.util.DigestUtils;
 import org.jackhuang.hmcl.util.FileUtils;
 import org.jackhuang.hmcl.util.IOUtils;
+import org.jackhuang.hmcl.util.Lang;
 import org.jackhuang.hmcl.util.Logging;
 import org.jackhuang.hmcl.util.NetworkUtils;
+import org.jackhuang.hmcl.util.StringUtils;
+import org.jackhuang.hmcl.util.VerificationIndex;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.math.BigInteger;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.logging.Level;
 
 import static java.util.Objects.requireNonNull;
@@ -74,11 +98,13 @@ public class FileDownloadTask extends Task {
         }
     }
 
-    private final URL url;
+    private final List<URL> urls;
     private final File file;
     private final IntegrityCheck integrityCheck;
     private final int retry;
     private final EventManager<FailedEvent<URL>> onFailed = new EventManager<>();
+    private int segments = 1;
+    private volatile URL preferredURL;
     private RandomAccessFile rFile;
     private InputStream stream;
 
@@ -106,7 +132,29 @@ public class FileDownloadTask extends Task {
      * @param retry the times for retrying if downloading fails.
      */
     public FileDownloadTask(URL url, File file, IntegrityCheck integrityCheck, int retry) {
-        this.url = url;
+        this(Collections.singletonList(url), file, integrityCheck, retry);
+    }
+
+    /**
+     * @param urls the candidate URLs of remote file, tried in order when downloading fails.
+     * @param file the location that download to.
+     * @param integrityCheck the integrity check to perform, null if no integrity check is to be performed
+     */
+    public FileDownloadTask(List<URL> urls, File file, IntegrityCheck integrityCheck) {
+        this(urls, file, integrityCheck, 5);
+    }
+
+    /**
+     * @param urls the candidate URLs of remote file, tried in order when downloading fails.
+     * @param file the location that download to.
+     * @param integrityCheck the integrity check to perform, null if no integrity check is to be performed
+     * @param retry the times for retrying if downloading fails.
+     */
+    public FileDownloadTask(List<URL> urls, File file, IntegrityCheck integrityCheck, int retry) {
+        if (urls.isEmpty())
+            throw new IllegalArgumentException("At least one URL is required");
+
+        this.urls = new ArrayList<>(urls);
         this.file = file;
         this.integrityCheck = integrityCheck;
         this.retry = retry;
@@ -135,7 +183,33 @@ public class FileDownloadTask extends Task {
 
     @Override
     public Scheduler getScheduler() {
-        return Schedulers.io();
+        // Ranked right before the task is scheduled, so that the connection slot is taken on the host actually contacted.
+        preferredURL = selectURL(Collections.emptySet());
+        return Schedulers.io(preferredURL, getExecutor());
+    }
+
+    /**
+     * @param tried the string forms of candidates that have failed in this round,
+     *              since {@link URL#equals} resolves host names.
+     * @return the candidate that is expected to be the fastest now by {@link DownloadStatistics}.
+     */
+    private URL selectURL(Set<String> tried) {
+        if (urls.size() == 1)
+            return urls.get(0);
+
+        URL best = null;
+        double bestTime = Double.POSITIVE_INFINITY;
+        for (URL url : urls) {
+            if (tried.contains(url.toString()))
+                continue;
+            double time = DownloadStatistics.INSTANCE.getExpectedTime(url);
+            // Prefers the former candidates when scores are equal.
+            if (best == null || time < bestTime) {
+                best = url;
+                bestTime = time;
+            }
+        }
+        return best == null ? urls.get(0) : best;
     }
 
     public EventManager<FailedEvent<URL>> getOnFailed() {
@@ -143,22 +217,125 @@ public class FileDownloadTask extends Task {
     }
 
     public URL getUrl() {
-        return url;
+        return urls.get(0);
+    }
+
+    public List<URL> getUrls() {
+        return Collections.unmodifiableList(urls);
     }
 
     public File getFile() {
         return file;
     }
 
+    public int getSegments() {
+        return segments;
+    }
+
+    /**
+     * Download the file with at most {@code segments} ranged requests concurrently,
+     * if the file is larger than {@link #SEGMENT_THRESHOLD} and the server accepts ranged requests.
+     * Useful for large files hosted by high-latency mirrors.
+     *
+     * @param segments the number of connections, 1 if the file should be downloaded in one connection.
+     * @return this
+     */
+    public FileDownloadTask setSegments(int segments) {
+        if (segments < 1)
+            throw new IllegalArgumentException("segments must be positive");
+        this.segments = segments;
+        return this;
+    }
+
+    /**
+     * The file that keeps the downloaded bytes between retries and launcher restarts.
+     */
+    public File getPartFile() {
+        return new File(file.getAbsolutePath() + ".part");
+    }
+
+    /**
+     * The file that stores the validator (ETag or Last-Modified) of {@link #getPartFile()},
+     * used in If-Range header when resuming.
+     */
+    private File getValidatorFile() {
+        return new File(file.getAbsolutePath() + ".part.etag");
+    }
+
+    private String readValidator() {
+        File validatorFile = getValidatorFile();
+        if (!validatorFile.isFile())
+            return null;
+        try {
+            String validator = FileUtils.readText(validatorFile).trim();
+            return validator.isEmpty() ? null : validator;
+        } catch (IOException e) {
+            Logging.LOG.log(Level.WARNING, "Unable to read validator of partial file " + validatorFile, e);
+            return null;
+        }
+    }
+
+    private static String getValidator(HttpURLConnection con) {
+        String validator = con.getHeaderField("ETag");
+        if (validator == null || validator.startsWith("W/")) // weak validators cannot be used in If-Range
+            validator = con.getHeaderField("Last-Modified");
+        return validator;
+    }
+
+    private void writeValidator(HttpURLConnection con) throws IOException {
+        String validator = getValidator(con);
+        if (validator == null)
+            getValidatorFile().delete();
+        else
+            FileUtils.writeText(getValidatorFile(), validator);
+    }
+
+    private void deletePartFile() {
+        getPartFile().delete();
+        getValidatorFile().delete();
+    }
+
+    /**
+     * @return the first byte position of Content-Range header, -1 if absent or malformed.
+     */
+    private static long getRangeStart(HttpURLConnection con) {
+        String contentRange = con.getHeaderField("Content-Range");
+        if (contentRange == null || !contentRange.startsWith("bytes "))
+            return -1;
+        Long start = Lang.toLongOrNull(StringUtils.substringBefore(contentRange.substring("bytes ".length()), '-').trim());
+        return start == null ? -1 : start;
+    }
+
     @Override
     public void execute() throws Exception {
-        URL currentURL = url;
+        URL currentURL = preferredURL != null ? preferredURL : getUrl();
+        Set<String> tried = new HashSet<>();
+        CacheRepository repository = CacheRepository.getInstance();
+
+        if (integrityCheck != null && repository != null) {
+            Optional<Path> cache = repository.checkExistentFile(integrityCheck.getAlgorithm(), integrityCheck.getChecksum());
+            if (cache.isPresent()) {
+                try {
+                    repository.placeFile(cache.get(), file.toPath());
+                    Logging.LOG.log(Level.FINER, "Using cached file " + cache.get() + " for " + file);
+                    recordVerified();
+                    return;
+                } catch (IOException e) {
+                    Logging.LOG.log(Level.WARNING, "Unable to place cached file " + cache.get() + " to " + file, e);
+                }
+            }
+        }
+
         Logging.LOG.log(Level.FINER, "Downloading " + currentURL + " to " + file);
         Exception exception = null;
 
         for (int repeat = 0; repeat < retry; repeat++) {
             if (repeat > 0) {
-                FailedEvent<URL> event = new FailedEvent<>(this, repeat, currentURL);
+                // Fail over to the candidate that is the fastest now, handlers of onFailed may still replace it.
+                tried.add(currentURL.toString());
+                if (urls.stream().allMatch(url -> tried.contains(url.toString())))
+                    tried.clear();
+                FailedEvent<URL> event = new FailedEvent<>(this, repeat, selectURL(tried));
                 onFailed.fireEvent(event);
                 currentURL = event.getNewResult();
             }
@@ -168,33 +345,99 @@ public class FileDownloadTask extends Task {
             }
 
             File temp = null;
+            // Client errors, e.g. 404 of an optional file, are answered by a working host.
+            boolean hostFailed = true;
 
             try {
                 updateProgress(0);
 
-                HttpURLConnection con = NetworkUtils.createConnection(url);
+                if (!FileUtils.makeDirectory(file.getAbsoluteFile().getParentFile()))
+                    throw new IOException("Could not make directory " + file.getAbsoluteFile().getParent());
+
+                // Another task may be downloading the same file, then we cannot share the partial file.
+                boolean resumable = true;
+                temp = getPartFile();
+                rFile = new RandomAccessFile(temp, "rw");
+                if (!tryLock(rFile)) {
+                    closeFiles();
+                    resumable = false;
+                    temp = FileUtils.createTempFile();
+                    rFile = new RandomAccessFile(temp, "rw");
+                }
+
+                long offset = resumable ? rFile.length() : 0;
+                String validator = offset > 0 ? readValidator() : null;
+                // Without a validator, we can only make sure that the resumed file is correct by integrity check.
+                if (validator == null && integrityCheck == null)
+                    offset = 0;
+
+                long startTime = System.nanoTime();
+                HttpURLConnection con = NetworkUtils.createConnection(currentURL);
+                if (offset > 0) {
+                    con.setRequestProperty("Range", "bytes=" + offset + "-");
+                    if (validator != null)
+                        con.setRequestProperty("If-Range", validator);
+                }
                 con.connect();
+                if (con.getResponseCode() / 100 == 4)
+                    hostFailed = false;
+
+                if (con.getResponseCode() == 416) { // Range Not Satisfiable, the partial file is stale.
+                    rFile.setLength(0);
+                    getValidatorFile().delete();
+                    throw new IOException("Partial file " + temp + " does not match the remote file");
+                }
 
                 if (con.getResponseCode() / 100 != 2)
                     throw new IOException("Server error, response code: " + con.getResponseCode());
 
-                int contentLength = con.getContentLength();
+                if (con.getResponseCode() == HttpURLConnection.HTTP_PARTIAL) {
+                    if (getRangeStart(con) != offset) {
+                        // The body is not the rest of the partial file, download the whole file again without Range.
+                        rFile.setLength(0);
+                        getValidatorFile().delete();
+                        throw new IOException("Unexpected Content-Range " + con.getHeaderField("Content-Range") + ", expected: " + offset);
+                    }
+                } else // The server ignores Range or If-Range does not match, the whole file is being sent.
+                    offset = 0;
+
+                long contentLength = con.getContentLengthLong();
                 if (contentLength < 1)
                     throw new IOException("The content length is invalid.");
+                long total = offset + contentLength;
 
-                if (!FileUtils.makeDirectory(file.getAbsoluteFile().getParentFile()))
-                    throw new IOException("Could not make directory " + file.getAbsoluteFile().getParent());
-
-                temp = FileUtils.createTempFile();
-                rFile = new RandomAccessFile(temp, "rw");
+                if (resumable)
+                    writeValidator(con);
 
                 MessageDigest digest = integrityCheck == null ? null : integrityCheck.createDigest();
+                byte buffer[] = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
+
+                // Rebuild the state of digest from the bytes downloaded before.
+                rFile.setLength(offset);
+                if (digest != null && offset > 0) {
+                    rFile.seek(0);
+                    int read;
+                    while ((read = rFile.read(buffer)) != -1)
+                        digest.update(buffer, 0, read);
+                }
+                rFile.seek(offset);
+
+                if (offset > 0)
+                    Logging.LOG.log(Level.FINER, "Resuming " + currentURL + " from " + offset + " bytes");
 
                 stream = con.getInputStream();
-                int lastDownloaded = 0, downloaded = 0;
+                boolean segmented = offset == 0 && segments > 1 && total >= SEGMENT_THRESHOLD
+                        && "bytes".equalsIgnoreCase(con.getHeaderField("Accept-Ranges"));
+                long lastDownloaded = offset, downloaded = offset;
                 long lastTime = System.currentTimeMillis();
-                byte buffer[] = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
-                while (true) {
+                if (segmented) {
+                    try {
+                        downloaded = downloadSegments(currentURL, getValidator(con), total, buffer);
+                    } finally {
+                        con.disconnect();
+                    }
+                }
+                while (!segmented) {
                     if (Thread.interrupted()) {
                         Thread.currentThread().interrupt();
                         break;
@@ -213,7 +456,7 @@ public class FileDownloadTask extends Task {
                     downloaded += read;
 
                     // Update progress information per second
-                    updateProgress(downloaded, contentLength);
+                    updateProgress(1.0 * downloaded / total);
                     long now = System.currentTimeMillis();
                     if (now - lastTime >= 1000) {
                         updateMessage((downloaded - lastDownloaded) / 1024 + "KB/s");
@@ -224,35 +467,61 @@ public class FileDownloadTask extends Task {
 
                 closeFiles();
 
-                // Restore temp file to original name.
+                // Keep the partial file so that we can resume next time.
                 if (Thread.interrupted()) {
-                    temp.delete();
+                    if (!resumable)
+                        temp.delete();
                     Thread.currentThread().interrupt();
                     break;
-                } else {
-                    if (file.exists() && !file.delete())
-                        throw new IOException("Unable to delete existent file " + file);
-                    if (!FileUtils.makeDirectory(file.getAbsoluteFile().getParentFile()))
-                        throw new IOException("Unable to make parent directory " + file);
-                    try {
-                        FileUtils.moveFile(temp, file);
-                    } catch (Exception e) {
-                        throw new IOException("Unable to move temp file from " + temp + " to " + file, e);
-                    }
                 }
 
-                if (downloaded != contentLength)
-                    throw new IllegalStateException("Unexpected file size: " + downloaded + ", expected: " + contentLength);
+                if (downloaded != total)
+                    throw new IllegalStateException("Unexpected file size: " + downloaded + ", expected: " + total);
 
                 // Integrity check
                 if (integrityCheck != null) {
-                    integrityCheck.performCheck(digest);
+                    if (segmented) // Segments are not downloaded in order, so we have to read the whole file again.
+                        try (InputStream input = new FileInputStream(temp)) {
+                            digest = DigestUtils.updateDigest(integrityCheck.createDigest(), input);
+                        }
+
+                    try {
+                        integrityCheck.performCheck(digest);
+                    } catch (ChecksumMismatchException e) {
+                        // The partial file is broken, we must download it from the very beginning.
+                        temp.delete();
+                        getValidatorFile().delete();
+                        throw e;
+                    }
+                }
+
+                DownloadStatistics.INSTANCE.recordSuccess(currentURL, downloaded - offset, System.nanoTime() - startTime);
+
+                // Restore temp file to original name.
+                if (!FileUtils.makeDirectory(file.getAbsoluteFile().getParentFile()))
+                    throw new IOException("Unable to make parent directory " + file);
+                try {
+                    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    throw new IOException("Unable to move temp file from " + temp + " to " + file, e);
+                }
+                getValidatorFile().delete();
+                recordVerified();
+
+                if (integrityCheck != null && repository != null) {
+                    try {
+                        repository.cacheFile(file.toPath(), integrityCheck.getAlgorithm(), integrityCheck.getChecksum());
+                    } catch (IOException e) {
+                        Logging.LOG.log(Level.WARNING, "Unable to cache file " + file, e);
+                    }
                 }
 
                 return;
             } catch (IOException | IllegalStateException e) {
-                if (temp != null)
+                if (temp != null && !temp.equals(getPartFile()))
                     temp.delete();
+                if (hostFailed)
+                    DownloadStatistics.INSTANCE.recordFailure(currentURL);
                 exception = e;
             } finally {
                 closeFiles();
@@ -263,4 +532,164 @@ public class FileDownloadTask extends Task {
             throw new IOException("Unable to download file " + currentURL, exception);
     }
 
+    /**
+     * Download the file with several ranged requests, while the first segment is
+     * downloaded from {@link #stream}, which is the response of the whole file.
+     * The other segments are written to {@link #rFile} concurrently by positional writes.
+     * Segments are scheduled by {@link DownloadScheduler} like other downloads of the host,
+     * and the task thread downloads the segments that have not been started by then itself,
+     * so that the task never waits for a connection slot while holding one.
+     *
+     * If the download fails, the part file is truncated to the bytes that are downloaded
+     * contiguously from the beginning, so that it can be resumed later.
+     *
+     * @param validator the validator of the first response, to make sure all segments belong to the same file.
+     * @return the number of bytes downloaded.
+     */
+    private long downloadSegments(URL url, String validator, long total, byte[] buffer) throws IOException {
+        int count = (int) Math.min(segments, total / MIN_SEGMENT_SIZE);
+        long segmentSize = (total + count - 1) / count;
+        AtomicLongArray progress = new AtomicLongArray(count);
+        FileChannel channel = rFile.getChannel();
+        rFile.setLength(total);
+
+        Logging.LOG.log(Level.FINER, "Downloading " + url + " in " + count + " segments");
+
+        List<Future<?>> futures = new ArrayList<>(count - 1);
+        AtomicIntegerArray started = new AtomicIntegerArray(count);
+        Scheduler scheduler = Schedulers.io(url, getExecutor());
+        boolean succeeded = false;
+        try {
+            for (int i = 1; i < count; i++) {
+                int index = i;
+                futures.add(scheduler.schedule(() -> {
+                    if (started.compareAndSet(index, 0, 1))
+                        downloadSegment(url, validator, channel, index, segmentSize, total, progress, new byte[IOUtils.DEFAULT_BUFFER_SIZE]);
+                }));
+            }
+
+            writeSegment(stream, channel, 0, Math.min(total, segmentSize), total, progress, 0, buffer);
+
+            long lastDownloaded = progress.get(0), lastTime = System.currentTimeMillis();
+            for (int i = 1; i < count; i++) {
+                Future<?> future = futures.get(i - 1);
+                if (started.compareAndSet(i, 0, 1)) {
+                    future.cancel(false);
+                    downloadSegment(url, validator, channel, i, segmentSize, total, progress, buffer);
+                    if (Thread.currentThread().isInterrupted())
+                        throw new InterruptedException();
+                    continue;
+                }
+
+                while (true) {
+                    try {
+                        future.get(1, TimeUnit.SECONDS);
+                        break;
+                    } catch (TimeoutException ignored) {
+                    }
+
+                    long downloaded = sum(progress);
+                    updateProgress(1.0 * downloaded / total);
+                    long now = System.currentTimeMillis();
+                    updateMessage((downloaded - lastDownloaded) * 1000 / Math.max(1, now - lastTime) / 1024 + "KB/s");
+                    lastDownloaded = downloaded;
+                    lastTime = now;
+                }
+            }
+            succeeded = true;
+            return sum(progress);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return sum(progress);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            else
+                throw new IOException("Unable to download segment of " + url, e.getCause());
+        } finally {
+            if (!succeeded) {
+                for (Future<?> future : futures)
+                    future.cancel(true);
+
+                long contiguous = 0;
+                for (int i = 0; i < count; i++) {
+                    contiguous += progress.get(i);
+                    if (progress.get(i) != Math.min(total, (i + 1) * segmentSize) - i * segmentSize)
+                        break;
+                }
+                rFile.setLength(contiguous);
+            }
+        }
+    }
+
+    private void downloadSegment(URL url, String validator, FileChannel channel, int index, long segmentSize, long total, AtomicLongArray progress, byte[] buffer) throws IOException {
+        long start = index * segmentSize, end = Math.min(total, start + segmentSize);
+        HttpURLConnection con = NetworkUtils.createConnection(url);
+        con.setRequestProperty("Range", "bytes=" + start + "-" + (end - 1));
+        if (validator != null)
+            con.setRequestProperty("If-Range", validator);
+        con.connect();
+        try {
+            if (con.getResponseCode() != HttpURLConnection.HTTP_PARTIAL || getRangeStart(con) != start)
+                throw new IOException("Server does not accept ranged requests, response code: " + con.getResponseCode());
+            try (InputStream input = con.getInputStream()) {
+                writeSegment(input, channel, start, end, total, progress, index, buffer);
+            }
+        } finally {
+            con.disconnect();
+        }
+    }
+
+    private void writeSegment(InputStream input, FileChannel channel, long start, long end, long total, AtomicLongArray progress, int index, byte[] buffer) throws IOException {
+        long position = start;
+        while (position < end) {
+            if (Thread.currentThread().isInterrupted())
+                return;
+
+            int read = input.read(buffer, 0, (int) Math.min(buffer.length, end - position));
+            if (read == -1)
+                throw new IOException("Unexpected end of segment at " + position + ", expected: " + end);
+
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+            while (byteBuffer.hasRemaining())
+                position += channel.write(byteBuffer, position);
+            progress.addAndGet(index, read);
+
+            // The first segment is downloaded by the task thread, which reports the progress of all segments.
+            if (index == 0)
+                updateProgress(1.0 * sum(progress) / total);
+        }
+    }
+
+    private static long sum(AtomicLongArray array) {
+        long sum = 0;
+        for (int i = 0; i < array.length(); i++)
+            sum += array.get(i);
+        return sum;
+    }
+
+    /**
+     * Saves the verification of SHA-1 so that the file will not be hashed again when checking game completion.
+     */
+    private void recordVerified() {
+        if (integrityCheck != null && "SHA-1".equalsIgnoreCase(integrityCheck.getAlgorithm()))
+            VerificationIndex.getInstance().record(file.toPath(), integrityCheck.getChecksum());
+    }
+
+    private static boolean tryLock(RandomAccessFile file) throws IOException {
+        try {
+            // The lock will be released when the file is closed.
+            return file.getChannel().tryLock() != null;
+        } catch (OverlappingFileLockException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Files smaller than this size will not be downloaded in segments.
+     */
+    public static final long SEGMENT_THRESHOLD = 4 * 1024 * 1024;
+
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
 }
@@ -0,0 +1,275 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.task;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import org.jackhuang.hmcl.util.Constants;
+import org.jackhuang.hmcl.util.HttpCache;
+import org.jackhuang.hmcl.util.IOUtils;
+import org.jackhuang.hmcl.util.JsonUtils;
+import org.jackhuang.hmcl.util.Logging;
+import org.jackhuang.hmcl.util.NetworkUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.logging.Level;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Downloads a json document and parses it while the response is being received,
+ * instead of buffering the whole response into a string like {@link GetTask}.
+ *
+ * @author huangyuhui
+ */
+public final class GetJsonTask<T> extends TaskResult<T> {
+
+    private final URL url;
+    private final Type type;
+    private final int retry;
+    private final String id;
+    private boolean cacheable = false;
+    private boolean allowStale = false;
+
+    public GetJsonTask(URL url, Type type) {
+        this(url, type, ID);
+    }
+
+    public GetJsonTask(URL url, Type type, String id) {
+        this(url, type, id, 5);
+    }
+
+    public GetJsonTask(URL url, Type type, String id, int retry) {
+        this.url = url;
+        this.type = type;
+        this.retry = retry;
+        this.id = id;
+
+        setName(url.toString());
+    }
+
+    @Override
+    public Scheduler getScheduler() {
+        return Schedulers.io(url, getExecutor());
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    public boolean isCacheable() {
+        return cacheable;
+    }
+
+    /**
+     * Keep the response in {@link HttpCache}, so that it is revalidated by conditional requests
+     * instead of being downloaded again, and is used when the server cannot be reached.
+     *
+     * @return this
+     */
+    public GetJsonTask<T> setCacheable(boolean cacheable) {
+        this.cacheable = cacheable;
+        return this;
+    }
+
+    public boolean isAllowStale() {
+        return allowStale;
+    }
+
+    /**
+     * Use the cached response without revalidating it if present. Implies {@link #setCacheable(boolean)}.
+     *
+     * @return this
+     */
+    public GetJsonTask<T> setAllowStale(boolean allowStale) {
+        this.allowStale = allowStale;
+        if (allowStale)
+            this.cacheable = true;
+        return this;
+    }
+
+    @Override
+    public void execute() throws Exception {
+        HttpCache cache = cacheable ? HttpCache.getInstance() : null;
+        Optional<Path> cachedFile = cache == null ? Optional.empty() : cache.getCachedFile(url);
+        if (allowStale && cachedFile.isPresent() && readCachedFile(cachedFile.get()))
+            return;
+
+        IOException exception = null;
+        for (int time = 0; time < retry; ++time) {
+            if (time > 0)
+                Logging.LOG.log(Level.WARNING, "Failed to download, repeat times: " + time);
+            Path temp = null;
+            try {
+                updateProgress(0);
+                long startTime = System.nanoTime();
+                HttpURLConnection conn = NetworkUtils.createConnection(url);
+                if (cache != null)
+                    cache.prepareConnection(conn);
+
+                if (cache != null && cachedFile.isPresent() && conn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    DownloadStatistics.INSTANCE.recordLatency(url, System.nanoTime() - startTime);
+                    conn.disconnect();
+                    if (readCachedFile(cachedFile.get()))
+                        return;
+                    // The cached response is broken, download it again without a conditional request.
+                    cache.remove(url);
+                    cachedFile = Optional.empty();
+                    exception = new IOException("Cached response of " + url + " is broken");
+                    continue;
+                }
+
+                T result;
+                if (cache != null)
+                    temp = cache.createTempFile(url);
+                try (ProgressInputStream input = new ProgressInputStream(conn.getInputStream(), conn.getContentLengthLong(), temp);
+                     JsonReader reader = new JsonReader(new InputStreamReader(input, UTF_8))) {
+                    result = Constants.GSON.fromJson(reader, type);
+                    if (temp != null)
+                        input.drain();
+                    DownloadStatistics.INSTANCE.recordSuccess(url, input.read, System.nanoTime() - startTime);
+                }
+
+                if (result == null)
+                    throw new JsonParseException("Json object cannot be null.");
+                if (temp != null) {
+                    cache.commit(url, conn, temp);
+                    temp = null;
+                }
+                setResult(result);
+                return;
+            } catch (IOException | JsonParseException ex) {
+                if (Thread.currentThread().isInterrupted())
+                    throw new InterruptedException();
+                // Gson wraps the exception thrown by the stream, which means the connection is broken.
+                if (ex instanceof JsonParseException && !(ex.getCause() instanceof IOException))
+                    throw ex;
+                DownloadStatistics.INSTANCE.recordFailure(url);
+                exception = ex instanceof IOException ? (IOException) ex : (IOException) ex.getCause();
+
+                // The server cannot be reached, use the last good response instead of retrying.
+                if (cachedFile.isPresent() && readCachedFile(cachedFile.get())) {
+                    Logging.LOG.log(Level.WARNING, "Unable to download " + url + ", using the cached response", exception);
+                    return;
+                }
+            } finally {
+                if (temp != null)
+                    Files.deleteIfExists(temp);
+            }
+        }
+        throw exception != null ? exception : new IOException("Unable to download " + url);
+    }
+
+    /**
+     * @return true if the cached response is parsed successfully.
+     */
+    private boolean readCachedFile(Path file) {
+        try {
+            T result = JsonUtils.fromJsonFile(file.toFile(), type);
+            if (result != null) {
+                setResult(result);
+                return true;
+            }
+        } catch (IOException | JsonParseException e) {
+            Logging.LOG.log(Level.WARNING, "Unable to read cached response " + file + " of " + url, e);
+        }
+        return false;
+    }
+
+    /**
+     * Reports the progress of the response body, and copies it to the cache file if present.
+     */
+    private final class ProgressInputStream extends FilterInputStream {
+        private final long size;
+        private final OutputStream copy;
+        private long read = 0;
+
+        ProgressInputStream(InputStream in, long size, Path copy) throws IOException {
+            super(new BufferedInputStream(in));
+            this.size = size;
+            this.copy = copy == null ? null : new BufferedOutputStream(Files.newOutputStream(copy));
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                if (copy != null)
+                    copy.write(b);
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                if (copy != null)
+                    copy.write(b, off, n);
+                count(n);
+            }
+            return n;
+        }
+
+        /**
+         * Reads the rest of the response, which the json parser may leave unread, into the cache file.
+         */
+        void drain() throws IOException {
+            byte[] buffer = new byte[IOUtils.DEFAULT_BUFFER_SIZE];
+            while (read(buffer, 0, buffer.length) != -1) ;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (copy != null)
+                    copy.close();
+            }
+        }
+
+        private void count(int n) throws IOException {
+            if (Thread.currentThread().isInterrupted())
+                throw new IOException("Interrupted while downloading " + url);
+            read += n;
+            if (size > 0)
+                updateProgress(1.0 * read / size);
+        }
+    }
+
+    /**
+     * The default task result ID.
+     */
+    public static final String ID = "http_get_json";
+
+}
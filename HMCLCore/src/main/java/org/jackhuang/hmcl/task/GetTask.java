@@ -65,7 +65,7 @@ public final class GetTask extends TaskResult<String> {
 
     @Override
     public Scheduler getScheduler() {
-        return Schedulers.io();
+        return Schedulers.io(url, getExecutor());
     }
 
     @Override
@@ -81,6 +81,7 @@ public final class GetTask extends TaskResult<String> {
                 Logging.LOG.log(Level.WARNING, "Failed to download, repeat times: " + time);
             try {
                 updateProgress(0);
+                long startTime = System.nanoTime();
                 HttpURLConnection conn = NetworkUtils.createConnection(url);
                 InputStream input = conn.getInputStream();
                 ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -100,9 +101,11 @@ public final class GetTask extends TaskResult<String> {
                 if (size > 0 && size != read)
                     throw new IllegalStateException("Not completed! Readed: " + read + ", total size: " + size);
 
+                DownloadStatistics.INSTANCE.recordSuccess(url, read, System.nanoTime() - startTime);
                 setResult(baos.toString(charset.name()));
                 return;
             } catch (IOException ex) {
+                DownloadStatistics.INSTANCE.recordFailure(url);
                 exception = ex;
             }
         }
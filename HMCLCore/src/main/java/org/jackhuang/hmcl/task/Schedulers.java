@@ -20,6 +20,7 @@ package org.jackhuang.hmcl.task;
 import org.jackhuang.hmcl.util.Constants;
 import org.jackhuang.hmcl.util.Logging;
 
+import java.net.URL;
 import java.util.concurrent.*;
 
 /**
@@ -54,6 +55,22 @@ public final class Schedulers {
         return IO_EXECUTOR;
     }
 
+    private static volatile DownloadScheduler DOWNLOAD_SCHEDULER;
+
+    /**
+     * The shared scheduler that limits the connections to each host.
+     */
+    public static synchronized DownloadScheduler getDownloadScheduler() {
+        if (DOWNLOAD_SCHEDULER == null)
+            DOWNLOAD_SCHEDULER = new DownloadScheduler(Executors.newCachedThreadPool(runnable -> {
+                Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            }), 8, 6);
+
+        return DOWNLOAD_SCHEDULER;
+    }
+
     private static volatile ExecutorService SINGLE_EXECUTOR;
 
     private static synchronized ExecutorService getSingleExecutorService() {
@@ -81,6 +98,17 @@ public final class Schedulers {
         return NEW_THREAD;
     }
 
+    /**
+     * Runs {@code callable} on a new thread.
+     *
+     * @return the future of the result, which interrupts the thread when cancelled.
+     */
+    public static <T> FutureTask<T> async(Callable<T> callable) {
+        FutureTask<T> task = new FutureTask<>(callable);
+        newThread().schedule(task::run);
+        return task;
+    }
+
     private static Scheduler IO;
 
     public static synchronized Scheduler io() {
@@ -89,6 +117,17 @@ public final class Schedulers {
         return IO;
     }
 
+    /**
+     * The scheduler for tasks that download {@code url}.
+     *
+     * @param url the URL to download, whose host limits the connections.
+     * @param group the group that shares connections fairly with other groups, usually the {@link TaskExecutor}.
+     * @see DownloadScheduler
+     */
+    public static Scheduler io(URL url, Object group) {
+        return getDownloadScheduler().forHost(url.getHost(), group);
+    }
+
     private static Scheduler COMPUTATION;
 
     public static synchronized Scheduler computation() {
@@ -124,6 +163,9 @@ public final class Schedulers {
         if (IO_EXECUTOR != null)
             IO_EXECUTOR.shutdownNow();
 
+        if (DOWNLOAD_SCHEDULER != null)
+            DOWNLOAD_SCHEDULER.shutdown();
+
         if (SINGLE_EXECUTOR != null)
             SINGLE_EXECUTOR.shutdownNow();
     }
@@ -129,6 +129,19 @@ public abstract class Task {
         this.variables = variables;
     }
 
+    private TaskExecutor executor = null;
+
+    /**
+     * The executor that is running this task, null if this task is not running.
+     */
+    TaskExecutor getExecutor() {
+        return executor;
+    }
+
+    void setExecutor(TaskExecutor executor) {
+        this.executor = executor;
+    }
+
     /**
      * @throws InterruptedException if current thread is interrupted
      * @see Thread#isInterrupted
@@ -232,6 +245,21 @@ public abstract class Task {
         return executor;
     }
 
+    /**
+     * Creates an executor that does not block any thread while waiting for sub-tasks.
+     *
+     * @see AsyncTaskExecutor
+     */
+    public final TaskExecutor asyncExecutor() {
+        return new AsyncTaskExecutor(this);
+    }
+
+    public final TaskExecutor asyncExecutor(TaskListener taskListener) {
+        TaskExecutor executor = new AsyncTaskExecutor(this);
+        executor.addTaskListener(taskListener);
+        return executor;
+    }
+
     public final void start() {
         executor().start();
     }
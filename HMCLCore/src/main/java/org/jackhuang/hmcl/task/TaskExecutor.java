@@ -29,16 +29,16 @@ import java.util.logging.Level;
  *
  * @author huangyuhui
  */
-public final class TaskExecutor {
+public class TaskExecutor {
 
-    private final Task firstTask;
-    private final List<TaskListener> taskListeners = new LinkedList<>();
-    private boolean canceled = false;
-    private Exception lastException;
-    private final AtomicInteger totTask = new AtomicInteger(0);
-    private final ConcurrentLinkedQueue<Future<?>> workerQueue = new ConcurrentLinkedQueue<>();
-    private final AutoTypingMap<String> variables = new AutoTypingMap<>(new HashMap<>());
-    private Scheduler scheduler = Schedulers.newThread();
+    final Task firstTask;
+    final List<TaskListener> taskListeners = new LinkedList<>();
+    volatile boolean canceled = false;
+    Exception lastException;
+    final AtomicInteger totTask = new AtomicInteger(0);
+    final ConcurrentLinkedQueue<Future<?>> workerQueue = new ConcurrentLinkedQueue<>();
+    final AutoTypingMap<String> variables = new AutoTypingMap<>(new HashMap<>());
+    Scheduler scheduler = Schedulers.newThread();
 
     public TaskExecutor(Task task) {
         this.firstTask = task;
@@ -149,6 +149,7 @@ public final class TaskExecutor {
                 task.setDependentsSucceeded();
 
             task.setVariables(variables);
+            task.setExecutor(this);
 
             task.setState(Task.TaskState.RUNNING);
 
@@ -200,6 +201,7 @@ public final class TaskExecutor {
             taskListeners.forEach(it -> it.onFailed(task, e));
         } finally {
             task.setVariables(null);
+            task.setExecutor(null);
         }
         task.setState(flag ? Task.TaskState.SUCCEEDED : Task.TaskState.FAILED);
         return flag;
@@ -0,0 +1,137 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.util;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Finds occurrences of a set of patterns in texts in a single pass by Aho-Corasick automaton,
+ * regardless of how many patterns there are. Matching is case insensitive.
+ *
+ * @author huangyuhui
+ */
+@Immutable
+public final class AhoCorasick {
+
+    // The sorted characters of transitions of each state, and the states they go to.
+    private final char[][] keys;
+    private final int[][] targets;
+    private final int[] fail;
+    // The patterns ending at each state, including those ending at its suffixes.
+    private final int[][] outputs;
+
+    /**
+     * @param patterns the patterns, empty ones never match.
+     */
+    public AhoCorasick(List<String> patterns) {
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> output = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        output.add(new ArrayList<>());
+
+        for (int i = 0; i < patterns.size(); i++) {
+            String pattern = patterns.get(i);
+            if (pattern.isEmpty())
+                continue;
+            int state = 0;
+            for (int j = 0; j < pattern.length(); j++) {
+                char c = Character.toLowerCase(pattern.charAt(j));
+                Integer next = trie.get(state).get(c);
+                if (next == null) {
+                    next = trie.size();
+                    trie.get(state).put(c, next);
+                    trie.add(new TreeMap<>());
+                    output.add(new ArrayList<>());
+                }
+                state = next;
+            }
+            output.get(state).add(i);
+        }
+
+        int size = trie.size();
+        keys = new char[size][];
+        targets = new int[size][];
+        fail = new int[size];
+        outputs = new int[size][];
+        for (int state = 0; state < size; state++) {
+            TreeMap<Character, Integer> transitions = trie.get(state);
+            keys[state] = new char[transitions.size()];
+            targets[state] = new int[transitions.size()];
+            int k = 0;
+            for (Map.Entry<Character, Integer> entry : transitions.entrySet()) {
+                keys[state][k] = entry.getKey();
+                targets[state][k] = entry.getValue();
+                k++;
+            }
+        }
+
+        // Failure links are computed in breadth-first order, so that the failure state of a state is done before it.
+        Queue<Integer> queue = new ArrayDeque<>();
+        outputs[0] = toArray(output.get(0));
+        for (int target : targets[0]) {
+            fail[target] = 0;
+            queue.add(target);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            List<Integer> out = output.get(state);
+            out.addAll(output.get(fail[state]));
+            outputs[state] = toArray(out);
+
+            for (int k = 0; k < keys[state].length; k++) {
+                int target = targets[state][k];
+                int f = fail[state];
+                int next;
+                while ((next = next(f, keys[state][k])) < 0 && f != 0)
+                    f = fail[f];
+                fail[target] = next < 0 || next == target ? 0 : next;
+                queue.add(target);
+            }
+        }
+    }
+
+    private int next(int state, char c) {
+        int index = Arrays.binarySearch(keys[state], c);
+        return index < 0 ? -1 : targets[state][index];
+    }
+
+    /**
+     * Reports the index of matched pattern for each occurrence in {@code text}, in order of their end positions.
+     */
+    public void search(CharSequence text, IntConsumer action) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            int next;
+            while ((next = next(state, c)) < 0 && state != 0)
+                state = fail[state];
+            state = next < 0 ? 0 : next;
+
+            for (int pattern : outputs[state])
+                action.accept(pattern);
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = list.get(i);
+        return array;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+/**
+ * A content-addressed store of downloaded files, shared by all game repositories.
+ *
+ * Files are stored as {@code <directory>/<algorithm>/<first 2 characters of hash>/<hash>}
+ * and placed into game repositories by hard links, falling back to copies
+ * if hard links are not supported (e.g. across file systems).
+ * A cached file that has ever been copied is marked by {@code <hash>.copied},
+ * since whether it is still referenced cannot be told by its number of hard links.
+ *
+ * @author huangyuhui
+ */
+public class CacheRepository {
+
+    private final Path directory;
+
+    public CacheRepository(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Path getFile(String algorithm, String hash) {
+        hash = hash.toLowerCase(Locale.ROOT);
+        return directory.resolve(algorithm.toLowerCase(Locale.ROOT).replace("-", "")).resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    /**
+     * Finds the cached file with given hash, and makes sure that the file is not broken.
+     *
+     * @return the cached file, or empty if absent or broken.
+     */
+    public Optional<Path> checkExistentFile(String algorithm, String hash) {
+        if (hash.length() < 2)
+            return Optional.empty();
+
+        Path file = getFile(algorithm, hash);
+        if (!Files.isRegularFile(file))
+            return Optional.empty();
+
+        // Hard linked files may have been modified in place.
+        if ("SHA-1".equalsIgnoreCase(algorithm)) {
+            // The file is hashed again only if its size or modification time has changed since last verified.
+            if (VerificationIndex.getInstance().verify(file, hash))
+                return Optional.of(file);
+        } else {
+            try (InputStream input = Files.newInputStream(file)) {
+                if (hash.equalsIgnoreCase(Hex.encodeHex(DigestUtils.digest(algorithm, input))))
+                    return Optional.of(file);
+            } catch (IOException e) {
+                Logging.LOG.log(Level.WARNING, "Unable to verify cached file " + file, e);
+            }
+        }
+
+        Logging.LOG.warning("Cached file " + file + " is broken, removing it");
+        Lang.ignoringException(() -> Files.deleteIfExists(file));
+        Lang.ignoringException(() -> Files.deleteIfExists(getCopiedMarker(file)));
+        return Optional.empty();
+    }
+
+    /**
+     * Places the cached file to {@code target}, replacing the existing one.
+     */
+    public void placeFile(Path cached, Path target) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+        Files.deleteIfExists(target);
+        if (!link(cached, target))
+            markCopied(cached);
+    }
+
+    /**
+     * Adds the verified file into the cache repository.
+     *
+     * @param file the file whose {@code algorithm} hash equals to {@code hash}.
+     */
+    public void cacheFile(Path file, String algorithm, String hash) throws IOException {
+        if (hash.length() < 2)
+            return;
+
+        Path cached = getFile(algorithm, hash);
+        if (Files.exists(cached))
+            return;
+
+        Files.createDirectories(cached.getParent());
+        Path temp = cached.resolveSibling(cached.getFileName() + ".tmp");
+        Files.deleteIfExists(temp);
+        boolean linked = link(file, temp);
+        Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        if (!linked)
+            markCopied(cached);
+        if ("SHA-1".equalsIgnoreCase(algorithm))
+            VerificationIndex.getInstance().record(cached, hash);
+    }
+
+    /**
+     * Removes the cached files that are no longer referenced by any game repository.
+     *
+     * A cached file is referenced while some file in game repositories is hard linked to it,
+     * so this method only works on file systems that report the number of hard links.
+     * Files that have been copied instead of hard linked are kept.
+     *
+     * @return the number of removed files.
+     */
+    public int gc() throws IOException {
+        if (!Files.isDirectory(directory))
+            return 0;
+
+        int removed = 0;
+        try (Stream<Path> stream = Files.walk(directory)) {
+            // Only files laid out as <algorithm>/<hh>/<hash>, since the directory may be shared with other caches.
+            for (Path file : (Iterable<Path>) stream.filter(file -> isCachedFile(directory.relativize(file)) && Files.isRegularFile(file))::iterator) {
+                if (Files.exists(getCopiedMarker(file)))
+                    continue;
+
+                int links;
+                try {
+                    links = (Integer) Files.getAttribute(file, "unix:nlink");
+                } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                    Logging.LOG.info("Number of hard links is not supported, unable to remove unreferenced files from cache repository " + directory);
+                    break;
+                }
+
+                if (links <= 1) {
+                    Files.deleteIfExists(file);
+                    removed++;
+                }
+            }
+        }
+        Logging.LOG.info("Removed " + removed + " unreferenced files from cache repository " + directory);
+        return removed;
+    }
+
+    private static boolean isCachedFile(Path relative) {
+        // Excludes <hash>.tmp left by cacheFile and <hash>.copied markers.
+        return relative.getNameCount() == 3
+                && relative.getName(1).toString().length() == 2
+                && relative.getName(2).toString().startsWith(relative.getName(1).toString())
+                && relative.getName(2).toString().indexOf('.') < 0;
+    }
+
+    private static Path getCopiedMarker(Path cached) {
+        return cached.resolveSibling(cached.getFileName() + ".copied");
+    }
+
+    private static void markCopied(Path cached) {
+        try {
+            Path marker = getCopiedMarker(cached);
+            if (!Files.exists(marker))
+                Files.createFile(marker);
+        } catch (IOException e) {
+            Logging.LOG.log(Level.WARNING, "Unable to mark cached file " + cached + " as copied", e);
+        }
+    }
+
+    /**
+     * @return true if {@code target} is hard linked to {@code source}, false if it is copied.
+     */
+    private static boolean link(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+            return true;
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+            return false;
+        }
+    }
+
+    private static CacheRepository instance = null;
+
+    /**
+     * The cache repository used by {@link org.jackhuang.hmcl.task.FileDownloadTask}.
+     *
+     * @return the cache repository, null if cache repository is disabled.
+     */
+    public static CacheRepository getInstance() {
+        return instance;
+    }
+
+    public static void setInstance(CacheRepository instance) {
+        CacheRepository.instance = instance;
+    }
+}
@@ -19,6 +19,10 @@ package org.jackhuang.hmcl.util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
@@ -55,6 +59,10 @@ public final class DigestUtils {
         return digest(getDigest(algorithm), data);
     }
 
+    public static byte[] digest(String algorithm, Path file) throws IOException {
+        return updateDigest(getDigest(algorithm), file).digest();
+    }
+
     public static byte[] digest(MessageDigest digest, InputStream data) throws IOException {
         return updateDigest(digest, data).digest();
     }
@@ -71,4 +79,29 @@ public final class DigestUtils {
         return digest;
     }
 
+    /**
+     * Updates the digest with the content of {@code file}.
+     * Large files are read into a reused direct buffer, so that they are neither copied to heap nor read in small chunks.
+     * Files are not memory-mapped, since a mapping keeps the file open on Windows until it is garbage collected,
+     * and the file cannot be replaced or deleted right after it is found broken.
+     */
+    public static MessageDigest updateDigest(MessageDigest digest, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer buffer = size < DIRECT_THRESHOLD
+                    ? ByteBuffer.allocate((int) Math.min(size, FILE_BUFFER_LENGTH) + 1)
+                    : DIRECT_BUFFER.get();
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return digest;
+    }
+
+    private static final int FILE_BUFFER_LENGTH = 64 * 1024;
+    private static final long DIRECT_THRESHOLD = 1024 * 1024;
+    private static final ThreadLocal<ByteBuffer> DIRECT_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(1024 * 1024));
 }
@@ -0,0 +1,137 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.util;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Level;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The disk cache of small remote documents, such as version lists.
+ *
+ * The response of each URL is stored as {@code <directory>/<SHA-1 of URL>}, with its ETag and
+ * Last-Modified in {@code <directory>/<SHA-1 of URL>.meta}, which are sent back to the server
+ * so that an unchanged document is not downloaded again.
+ *
+ * @author huangyuhui
+ */
+public class HttpCache {
+
+    private final Path directory;
+
+    public HttpCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private Path getFile(URL url) {
+        return directory.resolve(Hex.encodeHex(DigestUtils.digest("SHA-1", url.toString())));
+    }
+
+    private Path getMetaFile(URL url) {
+        return directory.resolve(Hex.encodeHex(DigestUtils.digest("SHA-1", url.toString())) + ".meta");
+    }
+
+    /**
+     * @return the last successfully downloaded response of {@code url}, empty if absent.
+     */
+    public Optional<Path> getCachedFile(URL url) {
+        Path file = getFile(url);
+        return Files.isRegularFile(file) ? Optional.of(file) : Optional.empty();
+    }
+
+    /**
+     * Makes {@code con}, which is not connected yet, a conditional request if the response of its URL is cached.
+     * The server will respond 304 if the cached response is still up to date.
+     */
+    public void prepareConnection(HttpURLConnection con) {
+        URL url = con.getURL();
+        Path meta = getMetaFile(url);
+        if (!getCachedFile(url).isPresent() || !Files.isRegularFile(meta))
+            return;
+
+        try {
+            List<String> lines = Files.readAllLines(meta, UTF_8);
+            if (lines.size() > 0 && !lines.get(0).isEmpty())
+                con.setRequestProperty("If-None-Match", lines.get(0));
+            if (lines.size() > 1 && !lines.get(1).isEmpty())
+                con.setRequestProperty("If-Modified-Since", lines.get(1));
+        } catch (IOException e) {
+            Logging.LOG.log(Level.WARNING, "Unable to read cache metadata " + meta, e);
+        }
+    }
+
+    /**
+     * @return the temporary file that the response of {@code url} should be written to before {@link #commit}.
+     */
+    public Path createTempFile(URL url) throws IOException {
+        Files.createDirectories(directory);
+        return Files.createTempFile(directory, getFile(url).getFileName().toString(), ".tmp");
+    }
+
+    /**
+     * Replaces the cached response of {@code url} by {@code temp}, which contains the whole response body.
+     *
+     * @param con the connection that the response is received from.
+     */
+    public void commit(URL url, HttpURLConnection con, Path temp) throws IOException {
+        String etag = Lang.nonNull(con.getHeaderField("ETag"), "");
+        String lastModified = Lang.nonNull(con.getHeaderField("Last-Modified"), "");
+
+        Files.move(temp, getFile(url), StandardCopyOption.REPLACE_EXISTING);
+        Files.write(getMetaFile(url), (etag + "\n" + lastModified + "\n").getBytes(UTF_8));
+    }
+
+    /**
+     * Removes the cached response of {@code url}, so that the next request is not conditional.
+     */
+    public void remove(URL url) {
+        try {
+            Files.deleteIfExists(getFile(url));
+            Files.deleteIfExists(getMetaFile(url));
+        } catch (IOException e) {
+            Logging.LOG.log(Level.WARNING, "Unable to remove cached response of " + url, e);
+        }
+    }
+
+    private static HttpCache instance = null;
+
+    /**
+     * The cache used by {@link org.jackhuang.hmcl.task.GetJsonTask}.
+     *
+     * @return the http cache, null if http cache is disabled.
+     */
+    public static HttpCache getInstance() {
+        return instance;
+    }
+
+    public static void setInstance(HttpCache instance) {
+        HttpCache.instance = instance;
+    }
+}
@@ -70,6 +70,7 @@ public final class JavaVersion {
     /**
      * The major version of Java installation.
      *
+     * @see org.jackhuang.hmcl.util.JavaVersion#JAVA_13
      * @see org.jackhuang.hmcl.util.JavaVersion#JAVA_11
      * @see org.jackhuang.hmcl.util.JavaVersion#JAVA_10
      * @see org.jackhuang.hmcl.util.JavaVersion#JAVA_9
@@ -82,6 +83,7 @@ public final class JavaVersion {
     }
 
     private static final Pattern REGEX = Pattern.compile("version \"(?<version>(.*?))\"");
+    private static final Pattern MAJOR = Pattern.compile("^(?<major>[0-9]{1,3})");
 
     public static final int UNKNOWN = -1;
     public static final int JAVA_7 = 70;
@@ -89,8 +91,17 @@ public final class JavaVersion {
     public static final int JAVA_9 = 90;
     public static final int JAVA_10 = 100;
     public static final int JAVA_11 = 110;
+    public static final int JAVA_13 = 130;
 
     private static int parseVersion(String version) {
+        // Since Java 9, the version string starts with the major version.
+        Matcher matcher = MAJOR.matcher(version);
+        if (matcher.find()) {
+            int major = Integer.parseInt(matcher.group("major"));
+            if (major >= 12)
+                return major * 10;
+        }
+
         if (version.startsWith("11"))
             return JAVA_11;
         else if (version.startsWith("10"))
@@ -19,6 +19,14 @@ package org.jackhuang.hmcl.util;
 
 import com.google.gson.JsonParseException;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 /**
  * @author yushijinhun
  */
@@ -32,4 +40,13 @@ public final class JsonUtils {
             throw new JsonParseException("Json object cannot be null.");
         return parsed;
     }
+
+    /**
+     * Parses the json file without reading it into a string first.
+     */
+    public static <T> T fromJsonFile(File file, Type typeOfT) throws IOException, JsonParseException {
+        try (Reader reader = Files.newBufferedReader(file.toPath(), UTF_8)) {
+            return Constants.GSON.fromJson(reader, typeOfT);
+        }
+    }
 }
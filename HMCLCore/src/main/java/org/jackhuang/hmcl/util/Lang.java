@@ -339,6 +339,15 @@ public final class Lang {
         }
     }
 
+    public static Long toLongOrNull(Object string) {
+        try {
+            if (string == null) return null;
+            return Long.parseLong(string.toString());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
     public static Double toDoubleOrNull(Object string) {
         try {
             return Double.parseDouble(string.toString());
@@ -19,8 +19,8 @@ package org.jackhuang.hmcl.util;
 
 import javafx.scene.paint.Color;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  *
@@ -54,63 +54,48 @@ public enum Log4jLevel {
     public boolean lessOrEqual(Log4jLevel level) {
         return this.level <= level.level;
     }
-    public static final Pattern MINECRAFT_LOGGER = Pattern.compile("\\[(?<timestamp>[0-9:]+)] \\[[^/]+/(?<level>[^]]+)]");
-    public static final Pattern MINECRAFT_LOGGER_CATEGORY = Pattern.compile("\\[(?<timestamp>[0-9:]+)] \\[[^/]+/(?<level>[^]]+)] \\[(?<category>[^]]+)]");
     public static final String JAVA_SYMBOL = "([a-zA-Z_$][a-zA-Z\\d_$]*\\.)+[a-zA-Z_$][a-zA-Z\\d_$]*";
 
+    /**
+     * Guesses the level of a line of game output in a single pass without allocation,
+     * since it is called for every line.
+     *
+     * A line in the log4j layout {@code [time] [thread/LEVEL] [category]} is classified by the first
+     * {@code [time] [thread/LEVEL]} header, and then by the category {@code STDOUT} or {@code STDERR}
+     * of the first header having one. Other lines are classified by legacy tags like {@code [INFO]}.
+     *
+     * @return the level, null if unknown.
+     */
     public static Log4jLevel guessLevel(String line) {
-        Log4jLevel level = null;
-        Matcher m = MINECRAFT_LOGGER.matcher(line);
-        if (m.find()) {
-            // New style logs from log4j
-            String levelStr = m.group("level");
-            if (null != levelStr)
-                switch (levelStr) {
-                    case "INFO":
-                        level = INFO;
-                        break;
-                    case "WARN":
-                        level = WARN;
-                        break;
-                    case "ERROR":
-                        level = ERROR;
-                        break;
-                    case "FATAL":
-                        level = FATAL;
-                        break;
-                    case "TRACE":
-                        level = TRACE;
-                        break;
-                    case "DEBUG":
-                        level = DEBUG;
-                        break;
-                    default:
-                        break;
+        Log4jLevel level = null, legacyLevel = null, categoryLevel = null;
+        boolean header = false, category = false;
+
+        for (int i = line.indexOf('['); i >= 0 && !category; i = line.indexOf('[', i + 1)) {
+            long bounds = matchHeader(line, i);
+            if (bounds >= 0) {
+                int levelStart = (int) (bounds >>> 32), levelEnd = (int) bounds;
+                if (!header) {
+                    header = true;
+                    level = parseLevel(line, levelStart, levelEnd);
+                }
+
+                int categoryEnd = matchCategory(line, levelEnd + 1);
+                if (categoryEnd >= 0) {
+                    category = true;
+                    categoryLevel = parseCategory(line, levelEnd + 3, categoryEnd);
                 }
-            Matcher m2 = MINECRAFT_LOGGER_CATEGORY.matcher(line);
-            if (m2.find()) {
-                String level2Str = m2.group("category");
-                if (null != level2Str)
-                    switch (level2Str) {
-                        case "STDOUT":
-                            level = INFO;
-                            break;
-                        case "STDERR":
-                            level = ERROR;
-                            break;
-                    }
+            } else if (!header) {
+                legacyLevel = mergeLegacyLevel(legacyLevel, parseLegacyLevel(line, i));
             }
-        } else {
-            if (line.contains("[INFO]") || line.contains("[CONFIG]") || line.contains("[FINE]")
-                    || line.contains("[FINER]") || line.contains("[FINEST]"))
-                level = INFO;
-            if (line.contains("[SEVERE]") || line.contains("[STDERR]"))
-                level = ERROR;
-            if (line.contains("[WARNING]"))
-                level = WARN;
-            if (line.contains("[DEBUG]"))
-                level = DEBUG;
         }
+
+        if (header) {
+            // New style logs from log4j
+            if (categoryLevel != null)
+                level = categoryLevel;
+        } else
+            level = legacyLevel;
+
         if (line.contains("overwriting existing"))
             level = FATAL;
 
@@ -123,6 +108,115 @@ public enum Log4jLevel {
         return level;
     }
 
+    /**
+     * Matches {@code [0-9:]+] \[[^/]+/[^]]+]} at {@code i}, which is the index of the first {@code '['}.
+     *
+     * @return the begin index of the level in the higher 32 bits and the index of {@code ']'} following the level
+     * in the lower 32 bits, -1 if not matched.
+     */
+    private static long matchHeader(String line, int i) {
+        int length = line.length(), j = i + 1;
+        while (j < length && (line.charAt(j) >= '0' && line.charAt(j) <= '9' || line.charAt(j) == ':'))
+            j++;
+        if (j == i + 1 || !line.startsWith("] [", j))
+            return -1;
+
+        int threadStart = j + 3;
+        int slash = line.indexOf('/', threadStart);
+        if (slash <= threadStart)
+            return -1;
+
+        int levelEnd = line.indexOf(']', slash + 1);
+        if (levelEnd <= slash + 1)
+            return -1;
+        return ((long) (slash + 1) << 32) | levelEnd;
+    }
+
+    /**
+     * Matches {@code  \[[^]]+]} at {@code i}.
+     *
+     * @return the index of the closing {@code ']'}, -1 if not matched.
+     */
+    private static int matchCategory(String line, int i) {
+        if (!line.startsWith(" [", i))
+            return -1;
+        int end = line.indexOf(']', i + 2);
+        return end > i + 2 ? end : -1;
+    }
+
+    private static boolean regionEquals(String line, int start, int end, String str) {
+        return end - start == str.length() && line.startsWith(str, start);
+    }
+
+    private static Log4jLevel parseLevel(String line, int start, int end) {
+        switch (end - start) {
+            case 4:
+                if (line.startsWith("INFO", start))
+                    return INFO;
+                if (line.startsWith("WARN", start))
+                    return WARN;
+                return null;
+            case 5:
+                if (line.startsWith("ERROR", start))
+                    return ERROR;
+                if (line.startsWith("FATAL", start))
+                    return FATAL;
+                if (line.startsWith("TRACE", start))
+                    return TRACE;
+                if (line.startsWith("DEBUG", start))
+                    return DEBUG;
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    private static Log4jLevel parseCategory(String line, int start, int end) {
+        if (regionEquals(line, start, end, "STDOUT"))
+            return INFO;
+        if (regionEquals(line, start, end, "STDERR"))
+            return ERROR;
+        return null;
+    }
+
+    /**
+     * Parses the legacy tag like {@code [INFO]} at {@code i}, which is the index of {@code '['}.
+     */
+    private static Log4jLevel parseLegacyLevel(String line, int i) {
+        int end = line.indexOf(']', i + 1);
+        if (end < 0)
+            return null;
+        switch (end - i - 1) {
+            case 4:
+                return line.startsWith("INFO", i + 1) || line.startsWith("FINE", i + 1) ? INFO : null;
+            case 5:
+                if (line.startsWith("FINER", i + 1))
+                    return INFO;
+                return line.startsWith("DEBUG", i + 1) ? DEBUG : null;
+            case 6:
+                if (line.startsWith("CONFIG", i + 1) || line.startsWith("FINEST", i + 1))
+                    return INFO;
+                return line.startsWith("SEVERE", i + 1) || line.startsWith("STDERR", i + 1) ? ERROR : null;
+            case 7:
+                return line.startsWith("WARNING", i + 1) ? WARN : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Legacy tags take precedence in the order of DEBUG, WARN, ERROR and INFO, regardless of their positions.
+     */
+    private static Log4jLevel mergeLegacyLevel(Log4jLevel a, Log4jLevel b) {
+        if (a == null)
+            return b;
+        if (b == null)
+            return a;
+        return LEGACY_PRECEDENCE.indexOf(a) >= LEGACY_PRECEDENCE.indexOf(b) ? a : b;
+    }
+
+    private static final List<Log4jLevel> LEGACY_PRECEDENCE = Arrays.asList(INFO, ERROR, WARN, DEBUG);
+
     public static boolean isError(Log4jLevel a) {
         return a != null && a.lessOrEqual(Log4jLevel.ERROR);
     }
@@ -0,0 +1,91 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The latest output lines of a process, kept in a ring buffer of fixed capacity,
+ * so that a game printing for hours does not use more and more memory. Older lines are discarded.
+ *
+ * @author huangyuhui
+ */
+public final class LogStore {
+
+    private final String[] lines;
+    private final boolean[] errors;
+    private long size = 0;
+
+    /**
+     * @param capacity the number of latest lines kept.
+     */
+    public LogStore(int capacity) {
+        this.lines = new String[capacity];
+        this.errors = new boolean[capacity];
+    }
+
+    /**
+     * @param error true if the line is an error, which can be iterated by {@link #forEachError}.
+     */
+    public synchronized void add(String line, boolean error) {
+        int index = (int) (size % lines.length);
+        lines[index] = line;
+        errors[index] = error;
+        size++;
+    }
+
+    /**
+     * @return the number of lines ever added, including the discarded ones.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * @return the latest {@code n} lines that are kept, in order.
+     */
+    public synchronized List<String> tail(int n) {
+        long from = Math.max(size - n, size - lines.length);
+        List<String> result = new ArrayList<>((int) (size - Math.max(0, from)));
+        for (long i = Math.max(0, from); i < size; i++)
+            result.add(lines[(int) (i % lines.length)]);
+        return result;
+    }
+
+    /**
+     * Iterates the lines that are kept in order.
+     */
+    public void forEach(Consumer<String> action) {
+        tail(lines.length).forEach(action);
+    }
+
+    /**
+     * Iterates the lines that are kept and added as errors, in order.
+     */
+    public void forEachError(Consumer<String> action) {
+        List<String> result = new ArrayList<>();
+        synchronized (this) {
+            for (long i = Math.max(0, size - lines.length); i < size; i++)
+                if (errors[(int) (i % lines.length)])
+                    result.add(lines[(int) (i % lines.length)]);
+        }
+        result.forEach(action);
+    }
+}
@@ -18,7 +18,6 @@
 package org.jackhuang.hmcl.util;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * The managed process.
@@ -32,8 +31,9 @@ public class ManagedProcess {
     private final Process process;
     private final List<String> commands;
     private final Map<String, Object> properties = new HashMap<>();
-    private final Queue<String> lines = new ConcurrentLinkedQueue<>();
+    private final LogStore log;
     private final List<Thread> relatedThreads = new LinkedList<>();
+    private volatile boolean stopped = false;
 
     /**
      * Constructor.
@@ -44,6 +44,7 @@ public class ManagedProcess {
     public ManagedProcess(Process process, List<String> commands) {
         this.process = process;
         this.commands = Collections.unmodifiableList(new ArrayList<>(commands));
+        this.log = new LogStore(MAX_LINES_IN_MEMORY);
     }
 
     /**
@@ -72,17 +73,24 @@ public class ManagedProcess {
     }
 
     /**
-     * The (unmodifiable) standard output/error lines.
+     * The latest standard output/error lines.
      * If you want to add lines, use {@link #addLine}
      *
      * @see #addLine
      */
-    public Collection<String> getLines() {
-        return Collections.unmodifiableCollection(lines);
+    public LogStore getLog() {
+        return log;
     }
 
     public void addLine(String line) {
-        lines.add(line);
+        addLine(line, Log4jLevel.guessLevel(line));
+    }
+
+    /**
+     * @param level the level of the line classified by {@link Log4jLevel#guessLevel}, null if unknown.
+     */
+    public void addLine(String line, Log4jLevel level) {
+        log.add(line, Log4jLevel.isError(level));
     }
 
     /**
@@ -118,10 +126,23 @@ public class ManagedProcess {
      * Destroys the raw process and other related threads that are monitoring this raw process.
      */
     public void stop() {
+        stopped = true;
         process.destroy();
         relatedThreads.forEach(Thread::interrupt);
     }
 
+    /**
+     * True if the raw process is destroyed by {@link #stop()}.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * The number of latest lines kept in memory, older lines are discarded.
+     */
+    public static final int MAX_LINES_IN_MEMORY = 8192;
+
     @Override
     public String toString() {
         return "ManagedProcess[commands=" + commands + ", isRunning=" + isRunning() + "]";
@@ -0,0 +1,208 @@
+/*
+ * Hello Minecraft! Launcher.
+ * Copyright (C) 2018  huangyuhui <huanghongxun2008@126.com>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see {http://www.gnu.org/licenses/}.
+ */
+package org.jackhuang.hmcl.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+/**
+ * Remembers the SHA-1 of files that have been verified, together with their size and modification time,
+ * so that a file is hashed again only if it has been modified since it was verified.
+ *
+ * The index is stored as lines of {@code <sha1> <size> <last modified> <absolute path>}.
+ *
+ * @author huangyuhui
+ */
+public final class VerificationIndex {
+
+    private final Path indexFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private boolean loaded = false;
+    private volatile boolean dirty = false;
+
+    /**
+     * @param indexFile the file that the index is persisted to, null if the index should be kept in memory only.
+     */
+    public VerificationIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Checks whether the SHA-1 of {@code file} is {@code hash}.
+     *
+     * @return false if the file does not exist or is broken.
+     */
+    public boolean verify(Path file, String hash) {
+        load();
+
+        String key = file.toAbsolutePath().toString();
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attributes.isRegularFile())
+                return false;
+
+            Entry entry = entries.get(key);
+            if (entry != null && entry.matches(attributes))
+                return entry.hash.equalsIgnoreCase(hash);
+
+            String actualHash = Hex.encodeHex(DigestUtils.digest(ALGORITHM, file));
+            // The file may be modified while hashing, then the hash will be checked again next time.
+            if (entry(attributes, actualHash).matches(Files.readAttributes(file, BasicFileAttributes.class)))
+                put(key, entry(attributes, actualHash));
+            return actualHash.equalsIgnoreCase(hash);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (IOException e) {
+            Logging.LOG.log(Level.WARNING, "Unable to verify file " + file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Verifies files parallelly.
+     *
+     * @param files the files and their expected SHA-1.
+     * @return the files that do not exist or are broken.
+     */
+    public Set<Path> findInvalidFiles(Map<Path, String> files) {
+        load();
+
+        Set<Path> invalid = files.entrySet().parallelStream()
+                .filter(entry -> !verify(entry.getKey(), entry.getValue()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+        save();
+        return invalid;
+    }
+
+    /**
+     * Records that the SHA-1 of {@code file} is {@code hash}, usually right after the file is downloaded and checked.
+     */
+    public void record(Path file, String hash) {
+        load();
+
+        try {
+            put(file.toAbsolutePath().toString(), entry(Files.readAttributes(file, BasicFileAttributes.class), hash));
+        } catch (IOException e) {
+            Logging.LOG.log(Level.WARNING, "Unable to read attributes of file " + file, e);
+        }
+    }
+
+    private void put(String key, Entry entry) {
+        entries.put(key, entry);
+        dirty = true;
+    }
+
+    private synchronized void load() {
+        if (loaded)
+            return;
+        loaded = true;
+
+        if (indexFile == null || !Files.isRegularFile(indexFile))
+            return;
+
+        try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ", 4);
+                if (parts.length != 4)
+                    continue;
+                Long size = Lang.toLongOrNull(parts[1]), lastModified = Lang.toLongOrNull(parts[2]);
+                if (size != null && lastModified != null)
+                    entries.putIfAbsent(parts[3], new Entry(parts[0], size, lastModified));
+            }
+        } catch (IOException e) {
+            Logging.LOG.log(Level.WARNING, "Unable to load verification index " + indexFile, e);
+        }
+    }
+
+    /**
+     * Writes the index to disk if it has been changed.
+     * Entries of files that no longer exist are dropped.
+     */
+    public synchronized void save() {
+        if (indexFile == null || !dirty)
+            return;
+        dirty = false;
+
+        entries.keySet().removeIf(key -> !Files.isRegularFile(Paths.get(key)));
+
+        try {
+            Files.createDirectories(indexFile.toAbsolutePath().getParent());
+            Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    Entry value = entry.getValue();
+                    writer.write(value.hash + " " + value.size + " " + value.lastModified + " " + entry.getKey());
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Logging.LOG.log(Level.WARNING, "Unable to save verification index " + indexFile, e);
+        }
+    }
+
+    private static Entry entry(BasicFileAttributes attributes, String hash) {
+        return new Entry(hash, attributes.size(), attributes.lastModifiedTime().toMillis());
+    }
+
+    private static final class Entry {
+        private final String hash;
+        private final long size;
+        private final long lastModified;
+
+        Entry(String hash, long size, long lastModified) {
+            this.hash = hash;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size() && lastModified == attributes.lastModifiedTime().toMillis();
+        }
+    }
+
+    private static final String ALGORITHM = "SHA-1";
+
+    private static VerificationIndex instance = new VerificationIndex(null);
+
+    /**
+     * The verification index used when checking the completion of games, kept in memory by default.
+     */
+    public static VerificationIndex getInstance() {
+        return instance;
+    }
+
+    public static void setInstance(VerificationIndex instance) {
+        VerificationIndex.instance = instance;
+    }
+}